@@ -40,6 +40,7 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang.SystemUtils;
 import org.kontalk.crypto.PGPUtils;
 import org.kontalk.misc.KonException;
+import org.kontalk.misc.StartupProfiler;
 import org.kontalk.system.Control;
 import org.kontalk.util.CryptoUtils;
 import org.kontalk.util.EncodingUtils;
@@ -68,6 +69,7 @@ public final class Kontalk {
     }
 
     int start(boolean ui) {
+        StartupProfiler.begin(StartupProfiler.Phase.LOCK);
         // check if already running
         int port = (1 << 14) + (1 << 15) + mAppDir.hashCode() % (1 << 14);
         try {
@@ -79,6 +81,7 @@ public final class Kontalk {
         } catch(IOException ex) {
             LOGGER.log(Level.WARNING, "can't create socket", ex);
         }
+        StartupProfiler.end(StartupProfiler.Phase.LOCK);
 
         // initialize translation
         Tr.init();
@@ -186,6 +189,11 @@ public final class Kontalk {
                 .build()
         );
         options.addOption("c", "no-gui", false, "run without user interface");
+        options.addOption(Option.builder()
+                .longOpt("profile-startup")
+                .desc("print timing report of startup phases")
+                .build()
+        );
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd;
@@ -206,6 +214,9 @@ public final class Kontalk {
                 new Kontalk(Paths.get(appDir)) :
                 new Kontalk();
 
+        if (cmd.hasOption("profile-startup"))
+            StartupProfiler.enable(app.mAppDir.resolve(StartupProfiler.FILENAME));
+
         int returnCode = app.start(!cmd.hasOption("c"));
         if (returnCode != 0)
             // didn't work
@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.jivesoftware.smack.ExceptionCallback;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.StanzaListener;
 import org.jivesoftware.smack.XMPPException;
@@ -161,7 +162,7 @@ final class AvatarSendReceiver {
         }
     }
 
-    void requestAndListen(final JID jid, final String id) {
+    boolean requestAndListen(final JID jid, final String id) {
         // I dont get how to use this here
         //PubSubManager manager = new PubSubManager(conn);
 
@@ -180,53 +181,68 @@ final class AvatarSendReceiver {
             @Override
             public void processPacket(Stanza packet)
                     throws SmackException.NotConnectedException {
-
-                if (!(packet instanceof PubSub)) {
-                    LOGGER.warning("response not a pubsub packet");
+                byte[] avatarData = avatarData(packet);
+                if (avatarData.length == 0) {
+                    mHandler.onFailure(jid, id);
                     return;
                 }
-                PubSub pubSub = (PubSub) packet;
 
-                ExtensionElement itemsExt = pubSub.getExtension(PubSubElementType.ITEMS);
-                if (!(itemsExt instanceof ItemsExtension)) {
-                    LOGGER.warning("no items extension in response");
-                    return;
-                }
+                mHandler.onData(jid, id, avatarData);
+            }
+        };
 
-                ItemsExtension items = (ItemsExtension) itemsExt;
-                List<? extends ExtensionElement> itemsList = items.getItems();
-                if (itemsList.isEmpty()) {
-                    // TODO why this happens?
-                    LOGGER.warning("no items in itemlist");
-                    return;
-                }
+        ExceptionCallback exceptionCallback = new ExceptionCallback() {
+            @Override
+            public void processException(Exception ex) {
+                LOGGER.log(Level.WARNING, "exception response", ex);
+                mHandler.onFailure(jid, id);
+            }
+        };
 
-                // there should be only one item
-                ExtensionElement e = itemsList.get(0);
-                if (!(e instanceof PayloadItem)) {
-                    LOGGER.warning("element not a payloaditem");
-                    return;
-                }
+        return mConn.sendWithCallback(request, callback, exceptionCallback);
+    }
 
-                PayloadItem item = (PayloadItem) e;
-                ExtensionElement dataExt = item.getPayload();
-                if (!(dataExt instanceof AvatarDataExtension)) {
-                    LOGGER.warning("payload not avatar data");
-                    return;
-                }
+    private static byte[] avatarData(Stanza packet) {
+        if (!(packet instanceof PubSub)) {
+            LOGGER.warning("response not a pubsub packet");
+            return new byte[0];
+        }
+        PubSub pubSub = (PubSub) packet;
 
-                AvatarDataExtension avatarExt = (AvatarDataExtension) dataExt;
+        ExtensionElement itemsExt = pubSub.getExtension(PubSubElementType.ITEMS);
+        if (!(itemsExt instanceof ItemsExtension)) {
+            LOGGER.warning("no items extension in response");
+            return new byte[0];
+        }
 
-                byte[] avatarData = avatarExt.getData();
-                if (avatarData.length == 0) {
-                    LOGGER.warning("no avatar data in packet");
-                    return;
-                }
+        ItemsExtension items = (ItemsExtension) itemsExt;
+        List<? extends ExtensionElement> itemsList = items.getItems();
+        if (itemsList.isEmpty()) {
+            // TODO why this happens?
+            LOGGER.warning("no items in itemlist");
+            return new byte[0];
+        }
 
-                mHandler.onData(jid, id, avatarData);
-            }
-        };
+        // there should be only one item
+        ExtensionElement e = itemsList.get(0);
+        if (!(e instanceof PayloadItem)) {
+            LOGGER.warning("element not a payloaditem");
+            return new byte[0];
+        }
+
+        PayloadItem item = (PayloadItem) e;
+        ExtensionElement dataExt = item.getPayload();
+        if (!(dataExt instanceof AvatarDataExtension)) {
+            LOGGER.warning("payload not avatar data");
+            return new byte[0];
+        }
 
-        mConn.sendWithCallback(request, callback);
+        AvatarDataExtension avatarExt = (AvatarDataExtension) dataExt;
+
+        byte[] avatarData = avatarExt.getData();
+        if (avatarData.length == 0) {
+            LOGGER.warning("no avatar data in packet");
+        }
+        return avatarData;
     }
 }
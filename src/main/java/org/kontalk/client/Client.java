@@ -21,16 +21,14 @@ package org.kontalk.client;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jivesoftware.smack.ExceptionCallback;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.StanzaListener;
 import org.jivesoftware.smack.XMPPException;
@@ -54,6 +52,7 @@ import org.kontalk.misc.JID;
 import org.kontalk.misc.KonException;
 import org.kontalk.model.message.OutMessage;
 import org.kontalk.persistence.Config;
+import org.kontalk.persistence.Database;
 import org.kontalk.system.AttachmentManager;
 import org.kontalk.system.Control;
 import org.kontalk.system.RosterHandler;
@@ -63,37 +62,44 @@ import org.kontalk.system.RosterHandler;
  *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
-public final class Client implements StanzaListener, Runnable {
+public final class Client implements StanzaListener {
     private static final Logger LOGGER = Logger.getLogger(Client.class.getName());
 
     private static final String CAPS_CACHE_DIR = "caps_cache";
-    private static final LinkedBlockingQueue<Task> TASK_QUEUE = new LinkedBlockingQueue<>();
 
     public enum PresenceCommand {REQUEST, GRANT, DENY};
 
-    // NOTE: disconnect is instantaneous, all resulting exceptions should be catched
-    private enum Command {CONNECT, LAST_ACTIVITY};
-
     private final Control mControl;
 
     private final KonMessageSender mMessageSender;
+    private final LastActivityScheduler mLastActivityScheduler;
+    private final RosterCache mRosterCache;
     private final EnumMap<FeatureDiscovery.Feature, String> mFeatures;
-
-    private KonConnection mConn = null;
-    private AvatarSendReceiver mAvatarSendReceiver = null;
-    private HTTPFileSlotRequester mSlotRequester = null;
-    private FeatureDiscovery mFeatureDiscovery = null;
-
-    private Client(Control control, Path appDir) {
+    /** Server features of last established stream. */
+    private final EnumMap<FeatureDiscovery.Feature, String> mResumeFeatures;
+
+    // written on connect, read from all lanes
+    private volatile KonConnection mConn = null;
+    private volatile AvatarSendReceiver mAvatarSendReceiver = null;
+    private volatile HTTPFileSlotRequester mSlotRequester = null;
+    private volatile FeatureDiscovery mFeatureDiscovery = null;
+    /** Connection of last stream is used again. */
+    private volatile boolean mConnReused = false;
+
+    private Client(Control control, Database db, Path appDir) {
         mControl = control;
         //mLimited = limited;
 
         mMessageSender = new KonMessageSender(this);
+        mLastActivityScheduler = LastActivityScheduler.create(this);
+        mRosterCache = new RosterCache(db);
+        mExecutor = new ClientExecutor();
 
         // enable Smack debugging (print raw XML packets)
         //SmackConfiguration.DEBUG = true;
 
         mFeatures = new EnumMap<>(FeatureDiscovery.Feature.class);
+        mResumeFeatures = new EnumMap<>(FeatureDiscovery.Feature.class);
 
         // setting caps cache
         File cacheDir = appDir.resolve(CAPS_CACHE_DIR).toFile();
@@ -109,22 +115,11 @@ public final class Client implements StanzaListener, Runnable {
                 new SimpleDirectoryPersistentCache(cacheDir));
     }
 
-    public static Client create(Control control, Path appDir) {
-        Client client = new Client(control, appDir);
-
-        Thread clientThread = new Thread(client, "Client Connector");
-        clientThread.setDaemon(true);
-        clientThread.start();
-
-        return client;
+    public static Client create(Control control, Database db, Path appDir) {
+        return new Client(control, db, appDir);
     }
 
     public void connect(PersonalKey key) {
-        this.disconnect();
-
-        LOGGER.config("connecting...");
-        this.newStatus(Control.Status.CONNECTING);
-
         Config config = Config.getInstance();
         //String network = config.getString(KonConf.SERV_NET);
         String host = config.getString(Config.SERV_HOST);
@@ -133,6 +128,27 @@ public final class Client implements StanzaListener, Runnable {
 
         boolean validateCertificate = config.getBoolean(Config.SERV_CERT_VALIDATION);
 
+        if (mConn != null && mConn.isResumable(server,
+                key.getServerLoginKey(),
+                key.getBridgeCertificate(),
+                validateCertificate)) {
+            // keep connection and listeners, try to resume stream (XEP-0198)
+            LOGGER.config("resuming...");
+            mConnReused = true;
+            this.newStatus(Control.Status.CONNECTING);
+            mExecutor.submit(ClientExecutor.Lane.LIFECYCLE, () -> {
+                this.connectAsync();
+                return null;
+            });
+            return;
+        }
+
+        this.disconnect();
+
+        LOGGER.config("connecting...");
+        mConnReused = false;
+        this.newStatus(Control.Status.CONNECTING);
+
         // create connection
         mConn = new KonConnection(server,
                         key.getServerLoginKey(),
@@ -145,6 +161,8 @@ public final class Client implements StanzaListener, Runnable {
         Roster roster = Roster.getInstanceFor(mConn);
         // subscriptions handled by roster handler
         roster.setSubscriptionMode(Roster.SubscriptionMode.manual);
+        // request only roster changes since last login (XEP-0237)
+        roster.setRosterStore(mRosterCache);
 
         mAvatarSendReceiver = new AvatarSendReceiver(mConn, mControl.getAvatarHandler());
 
@@ -187,7 +205,10 @@ public final class Client implements StanzaListener, Runnable {
         mConn.addAsyncStanzaListener(this, IQTypeFilter.ERROR);
 
         // continue async
-        Client.TASK_QUEUE.offer(new Client.Task(Client.Command.CONNECT, new ArrayList<>(0)));
+        mExecutor.submit(ClientExecutor.Lane.LIFECYCLE, () -> {
+            this.connectAsync();
+            return null;
+        });
     }
 
     private void connectAsync() {
@@ -215,10 +236,20 @@ public final class Client implements StanzaListener, Runnable {
             }
         }
 
+        if (mConn.streamWasResumed()) {
+            // session state on server is unchanged
+            LOGGER.info("stream resumed");
+            mFeatures.putAll(mResumeFeatures);
+            this.newStatus(Control.Status.CONNECTED);
+            return;
+        }
+
         mFeatureDiscovery = new FeatureDiscovery(mConn);
 
         mFeatures.clear();
         mFeatures.putAll(mFeatureDiscovery.getServerFeatures());
+        mResumeFeatures.clear();
+        mResumeFeatures.putAll(mFeatures);
 
         mSlotRequester = mFeatures.containsKey(FeatureDiscovery.Feature.HTTP_FILE_UPLOAD) ?
                 new HTTPFileSlotRequester(mConn,
@@ -283,6 +314,24 @@ public final class Client implements StanzaListener, Runnable {
         return mConn != null && mConn.isAuthenticated();
     }
 
+    /**
+     * Return true if the current stream was resumed (XEP-0198). Presence and
+     * unacknowledged stanzas were restored then.
+     */
+    public boolean streamWasResumed() {
+        return mConn != null && mConn.streamWasResumed();
+    }
+
+    /**
+     * Return true if stanzas written but not acknowledged on the last stream
+     * are send again by Smack: the stream was resumed or, if resumption
+     * failed, the connection sends its unacknowledged queue after login. Not
+     * the case for a new connection.
+     */
+    public boolean unackedStanzasResent() {
+        return mConnReused;
+    }
+
     /**
      * The full JID of the user currently logged in.
      */
@@ -308,18 +357,18 @@ public final class Client implements StanzaListener, Runnable {
         VCard4 vcard = new VCard4();
         vcard.setType(IQ.Type.get);
         vcard.setTo(jid);
-        this.sendPacket(vcard);
+        this.sendPacketAsync(vcard);
     }
 
     public void sendPublicKeyRequest(JID jid) {
         LOGGER.info("to "+jid);
         PublicKeyPublish publicKeyRequest = new PublicKeyPublish();
         publicKeyRequest.setTo(jid.string());
-        this.sendPacket(publicKeyRequest);
+        this.sendPacketAsync(publicKeyRequest);
     }
 
     public void sendBlocklistRequest() {
-        this.sendPacket(BlockingCommand.blocklist());
+        this.sendPacketAsync(BlockingCommand.blocklist());
     }
 
     public void sendBlockingCommand(JID jid, boolean blocking) {
@@ -341,7 +390,7 @@ public final class Client implements StanzaListener, Runnable {
         // for testing
         //presence.addExtension(new PresenceSignature(""));
 
-        this.sendPacket(presence);
+        this.sendPacketAsync(presence);
     }
 
     public void sendPresenceSubscription(JID jid, PresenceCommand command) {
@@ -354,7 +403,7 @@ public final class Client implements StanzaListener, Runnable {
         }
         Presence presence = new Presence(type);
         presence.setTo(jid.string());
-        this.sendPacket(presence);
+        this.sendPacketAsync(presence);
     }
 
     public void sendChatState(JID jid, String threadID, ChatState state) {
@@ -363,43 +412,62 @@ public final class Client implements StanzaListener, Runnable {
             message.setThread(threadID);
         message.addExtension(new ChatStateExtension(state));
 
+        // like messages, so a state can't overtake its message
         this.sendPacket(message);
     }
 
     public void sendLastActivityRequest(JID jid) {
-        Client.TASK_QUEUE.offer(new Client.Task(Client.Command.LAST_ACTIVITY, Arrays.asList(jid)));
+        mLastActivityScheduler.request(jid);
     }
 
-    private void sendLastActivityRequestAsync(JID jid) {
-        if (mFeatureDiscovery == null) {
-            LOGGER.warning("no feature discovery");
-            return;
+    /** Request last activity of these contacts first. */
+    public void prioritizeLastActivity(Collection<JID> jids) {
+        mLastActivityScheduler.setVisible(jids);
+    }
+
+    /** Blocking. Return false if request was not sent. */
+    boolean sendLastActivityRequest(JID jid,
+            StanzaListener callback,
+            ExceptionCallback exceptionCallback) {
+        KonConnection conn = mConn;
+        FeatureDiscovery featureDiscovery = mFeatureDiscovery;
+        if (conn == null || featureDiscovery == null) {
+            LOGGER.warning("no connection");
+            return false;
         }
 
         // blocking
-        if (!mFeatureDiscovery.getFeaturesFor(jid.domain())
+        if (!featureDiscovery.getFeaturesFor(jid.domain())
                 .containsKey(FeatureDiscovery.Feature.LAST_ACTIVITY))
             // not supported by server
-            return;
+            return false;
 
         LastActivity request = new LastActivity(jid.string());
-        this.sendPacket(request);
+        return conn.sendWithCallback(request, callback, exceptionCallback);
     }
 
-    synchronized boolean sendPackets(Stanza[] stanzas) {
+    boolean sendPackets(Stanza[] stanzas) {
         boolean sent = true;
-        for (Stanza s: stanzas)
-            sent &= this.sendPacket(s);
+        synchronized (mSendLock) {
+            for (Stanza s: stanzas)
+                sent &= this.sendPacket(s);
+        }
         return sent;
     }
 
-    synchronized boolean sendPacket(Stanza p) {
-        if (mConn == null) {
+    boolean sendPacket(Stanza p) {
+        KonConnection conn = mConn;
+        if (conn == null) {
             LOGGER.warning("not connected");
             return false;
         }
 
-        return mConn.send(p);
+        return conn.send(p);
+    }
+
+    /** Send stanza in background, the response (if any) is not awaited. */
+    private void sendPacketAsync(Stanza p) {
+        mExecutor.submit(ClientExecutor.Lane.STANZA, () -> this.sendPacket(p));
     }
 
     @Override
@@ -408,6 +476,11 @@ public final class Client implements StanzaListener, Runnable {
     }
 
     public boolean addToRoster(JID jid, String name) {
+        return mExecutor.call(ClientExecutor.Lane.IQ,
+                () -> this.addToRosterBlocking(jid, name), false);
+    }
+
+    private boolean addToRosterBlocking(JID jid, String name) {
         if (!this.isConnected()) {
             LOGGER.info("not connected");
             return false;
@@ -433,6 +506,11 @@ public final class Client implements StanzaListener, Runnable {
     }
 
     public boolean removeFromRoster(JID jid) {
+        return mExecutor.call(ClientExecutor.Lane.IQ,
+                () -> this.removeFromRosterBlocking(jid), false);
+    }
+
+    private boolean removeFromRosterBlocking(JID jid) {
         if (!this.isConnected()) {
             LOGGER.info("not connected");
             return false;
@@ -457,6 +535,11 @@ public final class Client implements StanzaListener, Runnable {
     }
 
     public boolean updateRosterEntry(JID jid, String newName) {
+        return mExecutor.call(ClientExecutor.Lane.IQ,
+                () -> this.updateRosterEntryBlocking(jid, newName), false);
+    }
+
+    private boolean updateRosterEntryBlocking(JID jid, String newName) {
         if (!this.isConnected()) {
             LOGGER.info("not connected");
             return false;
@@ -477,12 +560,13 @@ public final class Client implements StanzaListener, Runnable {
         return true;
     }
 
-    public void requestAvatar(JID jid, String id) {
+    /** Request avatar data. Return false if request could not be send. */
+    public boolean requestAvatar(JID jid, String id) {
         if (mAvatarSendReceiver == null) {
             LOGGER.warning("no avatar sender");
-            return;
+            return false;
         }
-        mAvatarSendReceiver.requestAndListen(jid, id);
+        return mAvatarSendReceiver.requestAndListen(jid, id);
     }
 
     public void publishAvatar(String id, byte[] data) {
@@ -514,12 +598,15 @@ public final class Client implements StanzaListener, Runnable {
 
     /** Request upload slot (XEP-0636). Blocking */
     public AttachmentManager.Slot getUploadSlot(String name, long length, String mime) {
-        if (mSlotRequester == null) {
+        HTTPFileSlotRequester slotRequester = mSlotRequester;
+        if (slotRequester == null) {
             LOGGER.warning("no slot requester");
             return new AttachmentManager.Slot();
         }
 
-        return mSlotRequester.getSlot(name, length, mime);
+        return mExecutor.call(ClientExecutor.Lane.IQ,
+                () -> slotRequester.getSlot(name, length, mime),
+                new AttachmentManager.Slot());
     }
 
     /* package internal*/
@@ -528,6 +615,15 @@ public final class Client implements StanzaListener, Runnable {
         if (status != Control.Status.CONNECTED)
             mFeatures.clear();
 
+        if (status == Control.Status.DISCONNECTED || status == Control.Status.FAILED) {
+            // nothing to send anymore
+            mExecutor.cancel(ClientExecutor.Lane.STANZA);
+            mExecutor.cancel(ClientExecutor.Lane.IQ);
+            mLastActivityScheduler.clear();
+            LOGGER.info("last activity requests: "+mLastActivityScheduler);
+            LOGGER.info("client latencies: "+mExecutor);
+        }
+
         mControl.onStatusChange(status, this.getServerFeature());
     }
 
@@ -539,37 +635,4 @@ public final class Client implements StanzaListener, Runnable {
         return mFeatures.containsKey(FeatureDiscovery.Feature.MULTI_ADDRESSING)
                 && mConn != null ? mConn.getHost() : "";
     }
-
-    @Override
-    public void run() {
-        while (true) {
-            Task t;
-            try {
-                // blocking
-                t = TASK_QUEUE.take();
-            } catch (InterruptedException ex) {
-                LOGGER.log(Level.WARNING, "interrupted while waiting ", ex);
-                return;
-            }
-            switch (t.command) {
-                case CONNECT:
-                    this.connectAsync();
-                    break;
-                case LAST_ACTIVITY:
-                    this.sendLastActivityRequestAsync((JID) t.args.get(0));
-                    break;
-            }
-        }
-    }
-
-    private static class Task {
-
-        final Command command;
-        final List<?> args;
-
-        Task(Command c, List<?> a) {
-            command = c;
-            args = a;
-        }
-    }
 }
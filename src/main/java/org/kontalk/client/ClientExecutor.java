@@ -0,0 +1,179 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.client;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes client commands in separate lanes, each with an own thread and a
+ * bounded queue. A slow command (e.g. connecting) does not block commands in
+ * other lanes.
+ */
+final class ClientExecutor {
+    private static final Logger LOGGER = Logger.getLogger(ClientExecutor.class.getName());
+
+    enum Lane {
+        /** Connecting and login. */
+        LIFECYCLE(4),
+        /** Outgoing stanzas that don't wait for a response. */
+        STANZA(1000),
+        /** Blocking IQ round-trips. */
+        IQ(100);
+
+        private final int mCapacity;
+
+        Lane(int capacity) {
+            mCapacity = capacity;
+        }
+    }
+
+    private final Map<Lane, LaneExecutor> mLanes = new EnumMap<>(Lane.class);
+
+    ClientExecutor() {
+        for (Lane lane : Lane.values())
+            mLanes.put(lane, new LaneExecutor(lane));
+    }
+
+    /** Add a task to a lane. Empty if the lane queue is full. */
+    <T> Optional<Future<T>> submit(Lane lane, Callable<T> task) {
+        LaneExecutor executor = mLanes.get(lane);
+        long submitted = System.nanoTime();
+        try {
+            return Optional.of(executor.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    executor.mLatency.add(System.nanoTime() - submitted);
+                }
+            }));
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warning("lane queue full: "+lane);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Run a task in a lane and wait for the result.
+     * Returns the fallback value if the task was rejected, cancelled or failed.
+     */
+    <T> T call(Lane lane, Callable<T> task, T fallback) {
+        if (Thread.currentThread() == mLanes.get(lane).mThread) {
+            // already in lane, waiting would dead-lock
+            try {
+                return task.call();
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "task failed", ex);
+                return fallback;
+            }
+        }
+
+        Future<T> future = this.submit(lane, task).orElse(null);
+        if (future == null)
+            return fallback;
+
+        try {
+            return future.get();
+        } catch (CancellationException ex) {
+            LOGGER.info("task cancelled, lane: "+lane);
+        } catch (InterruptedException | ExecutionException ex) {
+            LOGGER.log(Level.WARNING, "task failed", ex);
+        }
+        return fallback;
+    }
+
+    /** Cancel all waiting tasks of a lane. The running task is not interrupted. */
+    void cancel(Lane lane) {
+        List<Runnable> tasks = new ArrayList<>();
+        mLanes.get(lane).getQueue().drainTo(tasks);
+        for (Runnable task : tasks)
+            if (task instanceof Future)
+                ((Future<?>) task).cancel(false);
+
+        if (!tasks.isEmpty())
+            LOGGER.info("cancelled "+tasks.size()+" tasks, lane: "+lane);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Lane, LaneExecutor> e : mLanes.entrySet())
+            sb.append(e.getKey()).append(": ").append(e.getValue().mLatency).append("; ");
+        return sb.toString();
+    }
+
+    private static final class LaneExecutor extends ThreadPoolExecutor {
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        private volatile Thread mThread = null;
+
+        LaneExecutor(Lane lane) {
+            super(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(lane.mCapacity));
+            String name = "Client " + lane.name().toLowerCase();
+            this.setThreadFactory(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                mThread = thread;
+                return thread;
+            });
+        }
+    }
+
+    /** Counts durations in exponential buckets (1ms, 4ms, 16ms, ...). */
+    static final class LatencyHistogram {
+        private static final long[] BOUNDS_MS = {1, 4, 16, 64, 256, 1024, 4096, 16384};
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(BOUNDS_MS.length + 1);
+
+        void add(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int i = 0;
+            while (i < BOUNDS_MS.length && millis >= BOUNDS_MS[i])
+                i++;
+            mCounts.incrementAndGet(i);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < mCounts.length(); i++) {
+                long count = mCounts.get(i);
+                if (count == 0)
+                    continue;
+                sb.append(i < BOUNDS_MS.length ? "<" + BOUNDS_MS[i] : ">=" + BOUNDS_MS[i - 1])
+                        .append("ms=").append(count).append(" ");
+            }
+            return sb.toString().trim();
+        }
+    }
+}
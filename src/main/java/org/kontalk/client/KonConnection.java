@@ -27,6 +27,8 @@ import java.security.PrivateKey;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,7 +59,18 @@ public final class KonConnection extends XMPPTCPConnection {
 
     private static final String RESSOURCE = "Kontalk_Desktop";
 
+    /** Seconds the server should keep our stream for resumption. */
+    private static final int RESUMPTION_TIME = 5 * 60;
+
+    /**
+     * SSL context of the last setup. Reused by following connections with the
+     * same setup, its session cache allows abbreviated TLS handshakes.
+     */
+    private static SSLContext SSL_CONTEXT = null;
+    private static List<Object> SSL_SETUP = null;
+
     private final boolean mHasLoginCredentials;
+    private final List<Object> mSetup;
 
     public KonConnection(EndpointServer server, boolean validateCertificate) {
         this(server, null, null, validateCertificate);
@@ -75,13 +88,15 @@ public final class KonConnection extends XMPPTCPConnection {
         );
 
         mHasLoginCredentials = privateKey != null && bridgeCert != null;
+        mSetup = setup(server, privateKey, bridgeCert, validateCertificate);
 
         // blacklist PLAIN mechanism
         SASLAuthentication.blacklistSASLMechanism("PLAIN");
 
-        // enable SM without resumption (XEP-0198)
+        // enable SM with resumption (XEP-0198)
         this.setUseStreamManagement(true);
-        this.setUseStreamManagementResumption(false);
+        this.setUseStreamManagementResumption(true);
+        this.setPreferredResumptionTime(RESUMPTION_TIME);
     }
 
     private static XMPPTCPConnectionConfiguration buildConfiguration(
@@ -113,10 +128,35 @@ public final class KonConnection extends XMPPTCPConnection {
             .setSecurityMode(SecurityMode.required);
 
         // setup SSL
-        SSLContext sslContext = null;
+        SSLContext sslContext = sslContext(
+                setup(server, privateKey, bridgeCert, validateCertificate),
+                privateKey, bridgeCert, validateCertificate);
+        if (sslContext != null)
+            builder.setCustomSSLContext(sslContext);
+
+        return builder.build();
+    }
+
+    private static List<Object> setup(EndpointServer server,
+            PrivateKey privateKey,
+            X509Certificate bridgeCert,
+            boolean validateCertificate) {
+        return Arrays.asList(server.toString(), privateKey, bridgeCert, validateCertificate);
+    }
+
+    private static synchronized SSLContext sslContext(List<Object> setup,
+            PrivateKey privateKey,
+            X509Certificate bridgeCert,
+            boolean validateCertificate) {
+        if (SSL_CONTEXT != null && setup.equals(SSL_SETUP)) {
+            LOGGER.config("reusing SSL context");
+            return SSL_CONTEXT;
+        }
+
         if (!validateCertificate) {
             LOGGER.warning("disabling SSL certificate validation");
         }
+        SSLContext sslContext;
         try {
             sslContext = privateKey == null || bridgeCert == null ?
                     TrustUtils.getCustomSSLContext(validateCertificate) :
@@ -132,12 +172,25 @@ public final class KonConnection extends XMPPTCPConnection {
                 KeyManagementException |
                 NoSuchProviderException ex) {
             LOGGER.log(Level.WARNING, "can't setup SSL connection", ex);
+            return null;
         }
 
-        if (sslContext != null)
-            builder.setCustomSSLContext(sslContext);
+        SSL_CONTEXT = sslContext;
+        SSL_SETUP = setup;
+        return sslContext;
+    }
 
-        return builder.build();
+    /**
+     * Return true if this connection was lost but the server may still hold
+     * the stream for resumption, and the connection was created with the
+     * given setup.
+     */
+    boolean isResumable(EndpointServer server,
+            PrivateKey privateKey,
+            X509Certificate bridgeCert,
+            boolean validateCertificate) {
+        return this.isDisconnectedButSmResumptionPossible() &&
+                mSetup.equals(setup(server, privateKey, bridgeCert, validateCertificate));
     }
 
     @Override
@@ -166,16 +219,28 @@ public final class KonConnection extends XMPPTCPConnection {
     }
 
     void sendWithCallback(IQ packet, StanzaListener callback) {
+        this.sendWithCallback(packet, callback, new ExceptionCallback() {
+            @Override
+            public void processException(Exception ex) {
+                LOGGER.log(Level.WARNING, "exception response", ex);
+            }
+        });
+    }
+
+    /**
+     * Send IQ packet, the exception callback is called on error response or
+     * timeout.
+     * Return false if packet could not be send.
+     */
+    boolean sendWithCallback(IQ packet, StanzaListener callback,
+            ExceptionCallback exceptionCallback) {
         LOGGER.config("packet: "+packet);
         try {
-            super.sendIqWithResponseCallback(packet, callback, new ExceptionCallback() {
-                @Override
-                public void processException(Exception ex) {
-                    LOGGER.log(Level.WARNING, "exception response", ex);
-                }
-            });
+            super.sendIqWithResponseCallback(packet, callback, exceptionCallback);
         } catch (SmackException.NotConnectedException ex) {
             LOGGER.log(Level.WARNING, "not connected", ex);
+            return false;
         }
+        return true;
     }
 }
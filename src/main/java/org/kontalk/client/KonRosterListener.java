@@ -18,7 +18,9 @@
 
 package org.kontalk.client;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -69,16 +71,22 @@ final class KonRosterListener implements RosterLoadedListener, RosterListener {
         if (mRoster == null || !mLoaded)
             return;
 
+        List<ClientUtils.KonRosterEntry> entries = new ArrayList<>(addresses.size());
         for (String jid: addresses) {
             RosterEntry entry = mRoster.getEntry(jid);
             if (entry == null) {
                 LOGGER.warning("jid not in roster: "+jid);
-                return;
+                continue;
             }
 
             LOGGER.config("entry: "+entry.toString());
-            mHandler.onEntryAdded(clientToModel(entry));
+            entries.add(clientToModel(entry));
         }
+
+        if (entries.size() == 1)
+            mHandler.onEntryAdded(entries.get(0));
+        else if (!entries.isEmpty())
+            mHandler.onEntriesAdded(entries);
     }
 
     @Override
@@ -0,0 +1,202 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.client;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.ExceptionCallback;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.packet.Stanza;
+import org.kontalk.misc.JID;
+
+/**
+ * Send Last Activity requests (XEP-0012) in an own thread.
+ *
+ * Requests for the same JID are only sent once within a time-to-live and the
+ * number of unanswered requests is limited. Contacts visible in the view are
+ * requested first.
+ */
+final class LastActivityScheduler implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(LastActivityScheduler.class.getName());
+
+    private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_IN_FLIGHT = 5;
+    private static final int MAX_REQUESTED_SIZE = 1000;
+
+    private final Client mClient;
+
+    // guarded by this
+    private final Set<JID> mQueued = new LinkedHashSet<>();
+    private final Set<JID> mVisible = new HashSet<>();
+    private final Map<JID, Long> mRequested = new HashMap<>();
+    private JID mSending = null;
+
+    private final Semaphore mInFlight = new Semaphore(MAX_IN_FLIGHT);
+
+    private final AtomicLong mSent = new AtomicLong();
+    private final AtomicLong mDeduped = new AtomicLong();
+    private final AtomicLong mTimedOut = new AtomicLong();
+
+    private LastActivityScheduler(Client client) {
+        mClient = client;
+    }
+
+    static LastActivityScheduler create(Client client) {
+        LastActivityScheduler scheduler = new LastActivityScheduler(client);
+
+        Thread thread = new Thread(scheduler, "Last Activity Prober");
+        thread.setDaemon(true);
+        thread.start();
+
+        return scheduler;
+    }
+
+    synchronized void request(JID jid) {
+        long now = System.currentTimeMillis();
+        Long requested = mRequested.get(jid);
+        if (mQueued.contains(jid) || jid.equals(mSending) ||
+                (requested != null && now - requested < TTL)) {
+            mDeduped.incrementAndGet();
+            return;
+        }
+
+        if (mRequested.size() > MAX_REQUESTED_SIZE)
+            mRequested.values().removeIf(t -> now - t >= TTL);
+
+        mQueued.add(jid);
+        this.notifyAll();
+    }
+
+    /** Set the JIDs that are requested before all others. */
+    synchronized void setVisible(Collection<JID> jids) {
+        mVisible.clear();
+        mVisible.addAll(jids);
+    }
+
+    /**
+     * Drop queued requests and forget sent requests, e.g. when connection is
+     * closed.
+     */
+    synchronized void clear() {
+        mQueued.clear();
+        mRequested.clear();
+    }
+
+    long sent() {
+        return mSent.get();
+    }
+
+    long deduped() {
+        return mDeduped.get();
+    }
+
+    long timedOut() {
+        return mTimedOut.get();
+    }
+
+    /** Request statistics, logged on disconnect. */
+    @Override
+    public String toString() {
+        return "sent="+mSent+", deduped="+mDeduped+", timed out="+mTimedOut;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            JID jid;
+            try {
+                // blocking
+                mInFlight.acquire();
+                jid = this.take();
+            } catch (InterruptedException ex) {
+                LOGGER.log(Level.WARNING, "interrupted while waiting ", ex);
+                return;
+            }
+
+            boolean sent = this.send(jid);
+            this.done(jid, sent);
+            if (!sent)
+                mInFlight.release();
+        }
+    }
+
+    private synchronized JID take() throws InterruptedException {
+        while (mQueued.isEmpty())
+            this.wait();
+
+        JID next = null;
+        for (JID jid : mVisible) {
+            if (mQueued.contains(jid)) {
+                next = jid;
+                break;
+            }
+        }
+        if (next == null)
+            next = mQueued.iterator().next();
+
+        mQueued.remove(next);
+        mSending = next;
+        return next;
+    }
+
+    /** Only successful requests are not sent again within TTL. */
+    private synchronized void done(JID jid, boolean sent) {
+        mSending = null;
+        if (sent)
+            mRequested.put(jid, System.currentTimeMillis());
+    }
+
+    private boolean send(JID jid) {
+        StanzaListener callback = new StanzaListener() {
+            @Override
+            public void processPacket(Stanza packet) {
+                // response is handled by LastActivityListener
+                mInFlight.release();
+            }
+        };
+
+        ExceptionCallback exceptionCallback = new ExceptionCallback() {
+            @Override
+            public void processException(Exception ex) {
+                if (ex instanceof SmackException.NoResponseException) {
+                    mTimedOut.incrementAndGet();
+                    LOGGER.info("no response, jid: "+jid);
+                }
+                mInFlight.release();
+            }
+        };
+
+        // blocking
+        boolean sent = mClient.sendLastActivityRequest(jid, callback, exceptionCallback);
+        if (sent)
+            mSent.incrementAndGet();
+        return sent;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.client;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
+import org.kontalk.persistence.Database;
+import org.kontalk.persistence.RosterTables;
+
+/**
+ * Persistent roster snapshot for roster versioning (XEP-0237).
+ *
+ * The server sends only the changes since the stored version, the unchanged
+ * entries are loaded from the database. Entries and version are written in
+ * one transaction.
+ */
+public final class RosterCache implements RosterStore {
+    private static final Logger LOGGER = Logger.getLogger(RosterCache.class.getName());
+
+    private static final String GROUP_DELIM = "\t";
+
+    private final Database mDB;
+    /** Bare JID to database row ID and item, loaded on first use. */
+    private Map<String, Entry> mEntries = null;
+    private String mVersion = "";
+    private int mVersionID = -1;
+
+    RosterCache(Database db) {
+        mDB = db;
+    }
+
+    @Override
+    public synchronized List<Item> getEntries() {
+        List<Item> items = new ArrayList<>(this.entries().size());
+        for (Entry e : this.entries().values())
+            items.add(e.item);
+        return items;
+    }
+
+    @Override
+    public synchronized Item getEntry(String bareJid) {
+        Entry e = this.entries().get(bareJid);
+        return e != null ? e.item : null;
+    }
+
+    @Override
+    public synchronized String getRosterVersion() {
+        // without snapshot the version is useless, e.g. if database was reset
+        if (this.entries().isEmpty())
+            return "";
+        return mVersion;
+    }
+
+    @Override
+    public synchronized boolean addEntry(Item item, String version) {
+        boolean[] succ = {true};
+        boolean committed = mDB.execTransaction(() -> {
+            succ[0] = this.put(item);
+            this.setVersion(version);
+        });
+        return this.done(succ[0] && committed);
+    }
+
+    @Override
+    public synchronized boolean resetEntries(Collection<Item> items, String version) {
+        LOGGER.info("new snapshot, entries: "+items.size());
+        boolean[] succ = {true};
+        boolean committed = mDB.execTransaction(() -> {
+            for (Entry e : this.entries().values())
+                mDB.execDelete(RosterTables.TABLE, e.id);
+            mEntries.clear();
+            for (Item item : items)
+                succ[0] &= this.put(item);
+            this.setVersion(version);
+        });
+        return this.done(succ[0] && committed);
+    }
+
+    @Override
+    public synchronized boolean removeEntry(String bareJid, String version) {
+        boolean committed = mDB.execTransaction(() -> {
+            Entry e = this.entries().remove(bareJid);
+            if (e != null)
+                mDB.execDelete(RosterTables.TABLE, e.id);
+            this.setVersion(version);
+        });
+        return this.done(committed);
+    }
+
+    /** On failure the snapshot is reloaded from database on next access. */
+    private boolean done(boolean succ) {
+        if (!succ) {
+            LOGGER.warning("can't save roster snapshot");
+            mEntries = null;
+        }
+        return succ;
+    }
+
+    private Map<String, Entry> entries() {
+        if (mEntries != null)
+            return mEntries;
+
+        this.loadVersion();
+
+        mEntries = new LinkedHashMap<>();
+        try (ResultSet resultSet = mDB.execSelectAll(RosterTables.TABLE)) {
+            while (resultSet.next()) {
+                Item item = new Item(resultSet.getString(RosterTables.COL_JID),
+                        resultSet.getString(RosterTables.COL_NAME));
+                item.setItemType(RosterPacket.ItemType.valueOf(
+                        resultSet.getString(RosterTables.COL_TYPE)));
+                String status = resultSet.getString(RosterTables.COL_STATUS);
+                if (status != null)
+                    item.setItemStatus(RosterPacket.ItemStatus.valueOf(status));
+                String groups = resultSet.getString(RosterTables.COL_GROUPS);
+                if (!groups.isEmpty())
+                    Arrays.stream(groups.split(GROUP_DELIM)).forEach(item::addGroupName);
+                mEntries.put(item.getUser(), new Entry(resultSet.getInt("_id"), item));
+            }
+        } catch (SQLException | IllegalArgumentException ex) {
+            LOGGER.log(Level.WARNING, "can't load roster snapshot", ex);
+            // request full roster
+            mEntries.clear();
+        }
+        LOGGER.config("loaded entries: "+mEntries.size());
+        return mEntries;
+    }
+
+    private boolean put(Item item) {
+        String type = item.getItemType().name();
+        String status = item.getItemStatus() != null ? item.getItemStatus().name() : null;
+        String groups = StringUtils.join(item.getGroupNames(), GROUP_DELIM);
+
+        Entry old = this.entries().get(item.getUser());
+        if (old == null) {
+            int id = mDB.execInsert(RosterTables.TABLE,
+                    Arrays.asList(item.getUser(), item.getName(), type, status, groups));
+            if (id <= 0)
+                return false;
+            mEntries.put(item.getUser(), new Entry(id, item));
+            return true;
+        }
+
+        Map<String, Object> set = new HashMap<>();
+        set.put(RosterTables.COL_NAME, item.getName());
+        set.put(RosterTables.COL_TYPE, type);
+        set.put(RosterTables.COL_STATUS, status);
+        set.put(RosterTables.COL_GROUPS, groups);
+        mEntries.put(item.getUser(), new Entry(old.id, item));
+        mDB.execUpdate(RosterTables.TABLE, set, old.id);
+        return true;
+    }
+
+    private void loadVersion() {
+        mVersion = "";
+        mVersionID = -1;
+        try (ResultSet resultSet = mDB.execSelectAll(RosterTables.VERSION_TABLE)) {
+            if (resultSet.next()) {
+                mVersionID = resultSet.getInt("_id");
+                mVersion = resultSet.getString(RosterTables.COL_VERSION);
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "can't load roster version", ex);
+        }
+    }
+
+    private void setVersion(String version) {
+        if (version == null || version.equals(mVersion))
+            return;
+
+        if (mVersionID <= 0) {
+            mVersionID = mDB.execInsert(RosterTables.VERSION_TABLE,
+                    Arrays.asList(version));
+        } else {
+            Map<String, Object> set = new HashMap<>();
+            set.put(RosterTables.COL_VERSION, version);
+            mDB.execUpdate(RosterTables.VERSION_TABLE, set, mVersionID);
+        }
+        mVersion = version;
+    }
+
+    private static final class Entry {
+        final int id;
+        final Item item;
+
+        Entry(int id, Item item) {
+            this.id = id;
+            this.item = item;
+        }
+    }
+}
@@ -51,7 +51,6 @@ import org.bouncycastle.openpgp.PGPPublicKeyEncryptedData;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureList;
 import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
-import org.bouncycastle.openpgp.operator.bc.BcPublicKeyDataDecryptorFactory;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.packet.Message;
 import org.kontalk.model.message.DecryptMessage;
@@ -72,6 +71,8 @@ import org.xmlpull.v1.XmlPullParserException;
 final class Decryptor {
     private static final Logger LOGGER = Logger.getLogger(Decryptor.class.getName());
 
+    private static final int LITERAL_BUFFER_SIZE = 1 << 12;
+
     private static class DecryptionResult {
         EnumSet<Coder.Error> errors = EnumSet.noneOf(Coder.Error.class);
         Coder.Signing signing = Coder.Signing.UNKNOWN;
@@ -110,7 +111,7 @@ final class Decryptor {
         try {
             decResult = decryptAndVerify(encryptedIn,
                     plainOut,
-                    mMyKey.getPrivateEncryptionKey(),
+                    mMyKey,
                     mSenderKey != null ?
                             Optional.of(mSenderKey.signKey) :
                             Optional.<PGPPublicKey>empty());
@@ -173,7 +174,7 @@ final class Decryptor {
                 FileOutputStream plainOut = new FileOutputStream(outFile)) {
             decResult = decryptAndVerify(encryptedIn,
                     plainOut,
-                    mMyKey.getPrivateEncryptionKey(),
+                    mMyKey,
                     mSenderKey != null ? Optional.of(mSenderKey.signKey) :
                             Optional.<PGPPublicKey>empty());
         } catch (IOException | PGPException ex){
@@ -210,7 +211,7 @@ final class Decryptor {
     /** Decrypt, verify and write input stream data to output stream. */
     private static DecryptionResult decryptAndVerify(
             InputStream encryptedInput, OutputStream plainOutput,
-            PGPPrivateKey myKey, Optional<PGPPublicKey> senderSigningKey)
+            PersonalKey myKey, Optional<PGPPublicKey> senderSigningKey)
             throws PGPException, IOException {
         // note: the signature is inside the encrypted data
 
@@ -235,14 +236,15 @@ final class Decryptor {
         Iterator<?> it = encDataList.getEncryptedDataObjects();
         PGPPrivateKey sKey = null;
         PGPPublicKeyEncryptedData pbe = null;
-        long myKeyID = myKey.getKeyID();
+        PGPPrivateKey myEncryptKey = myKey.getPrivateEncryptionKey();
+        long myKeyID = myEncryptKey.getKeyID();
         while (sKey == null && it.hasNext()) {
             Object i = it.next();
             if (!(i instanceof PGPPublicKeyEncryptedData))
                 continue;
             pbe = (PGPPublicKeyEncryptedData) i;
             if (pbe.getKeyID() == myKeyID)
-                sKey = myKey;
+                sKey = myEncryptKey;
         }
         if (sKey == null || pbe == null) {
             LOGGER.warning("private key for message not found");
@@ -250,7 +252,7 @@ final class Decryptor {
             return result;
         }
 
-        InputStream clear = pbe.getDataStream(new BcPublicKeyDataDecryptorFactory(sKey));
+        InputStream clear = pbe.getDataStream(myKey.getDecryptorFactory());
 
         PGPObjectFactory plainFactory = new PGPObjectFactory(clear, PGPUtils.FP_CALC);
 
@@ -297,11 +299,12 @@ final class Decryptor {
 
         PGPLiteralData ld = (PGPLiteralData) object;
         InputStream unc = ld.getInputStream();
-        int ch;
-        while ((ch = unc.read()) >= 0) {
-            plainOutput.write(ch);
+        byte[] buf = new byte[LITERAL_BUFFER_SIZE];
+        int len;
+        while ((len = unc.read(buf)) > 0) {
+            plainOutput.write(buf, 0, len);
             if (ops != null)
-                ops.update((byte) ch);
+                ops.update(buf, 0, len);
         }
 
         if (ops != null) {
@@ -395,12 +398,13 @@ final class Decryptor {
 
         // TODO check DateTime (possibly compare it with <delay/>)
 
-        String content = cpimMessage.getBody().toString();
+        CharSequence content = cpimMessage.getBody();
         MessageContent decryptedContent;
         if (XMPPUtils.XML_XMPP_TYPE.equalsIgnoreCase(mime)) {
             // XMPP XML format for advanced content (attachments)
             Message m;
             try {
+                // parsed directly from CPIM body, no string copy
                 m = XMPPUtils.parseMessageStanza(content);
             } catch (XmlPullParserException | IOException | SmackException ex) {
                 LOGGER.log(Level.WARNING, "can't parse XMPP XML string", ex);
@@ -412,7 +416,7 @@ final class Decryptor {
             decryptedContent = ClientUtils.parseMessageContent(m);
         } else {
             // text/plain MIME type for simple text messages
-            decryptedContent = MessageContent.plainText(content);
+            decryptedContent = MessageContent.plainText(content.toString());
         }
 
         message.setSecurityErrors(errors);
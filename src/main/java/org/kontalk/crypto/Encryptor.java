@@ -18,16 +18,14 @@
 
 package org.kontalk.crypto;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.security.SecureRandom;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
@@ -36,7 +34,7 @@ import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.openpgp.PGPCompressedData;
 import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
 import org.bouncycastle.openpgp.PGPEncryptedData;
@@ -47,7 +45,6 @@ import org.bouncycastle.openpgp.PGPLiteralDataGenerator;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
 import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
-import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
 import org.bouncycastle.openpgp.operator.bc.BcPGPDataEncryptorBuilder;
 import org.bouncycastle.openpgp.operator.bc.BcPublicKeyKeyEncryptionMethodGenerator;
 import org.kontalk.model.Contact;
@@ -64,6 +61,12 @@ final class Encryptor {
     // should always be a power of 2
     private static final int BUFFER_SIZE = 1 << 8;
 
+    /** Data encryptor, stateless and shared by all messages. */
+    private static final BcPGPDataEncryptorBuilder DATA_ENCRYPTOR =
+            new BcPGPDataEncryptorBuilder(PGPEncryptedData.AES_192)
+                    .setWithIntegrityPacket(true)
+                    .setSecureRandom(PGPUtils.RANDOM);
+
     private final PersonalKey myKey;
     private final OutMessage message;
 
@@ -98,18 +101,12 @@ final class Encryptor {
                 .toArray(String[]::new);
 
         CPIMMessage cpim = new CPIMMessage(from, tos, new Date(), mime, data);
-        byte[] plainText;
-        try {
-            plainText = cpim.toByteArray();
-        } catch (UnsupportedEncodingException ex) {
-            LOGGER.log(Level.WARNING, "UTF-8 not supported", ex);
-            plainText = cpim.toString().getBytes();
-        }
+        byte[] plainText = toBytes(cpim);
 
-        ByteArrayInputStream in = new ByteArrayInputStream(plainText);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plainText.length + 1024);
         try {
-            encryptAndSign(in, out, myKey, receiverKeys);
+            // write plain data directly into literal data stream
+            encryptAndSign(literalOut -> literalOut.write(plainText), out, myKey, receiverKeys);
         } catch(IOException | PGPException ex) {
             LOGGER.log(Level.WARNING, "can't encrypt message", ex);
             message.setSecurityErrors(EnumSet.of(Coder.Error.UNKNOWN_ERROR));
@@ -135,7 +132,7 @@ final class Encryptor {
 
         try (FileInputStream in = new FileInputStream(file);
                 FileOutputStream out = new FileOutputStream(tempFile)) {
-            encryptAndSign(in, out, myKey, receiverKeys);
+            encryptAndSign(literalOut -> IOUtils.copy(in, literalOut), out, myKey, receiverKeys);
         } catch (IOException | PGPException ex) {
             LOGGER.log(Level.WARNING, "can't encrypt attachment", ex);
             return Optional.empty();
@@ -159,25 +156,35 @@ final class Encryptor {
         return receiverKeys;
     }
 
+    private static byte[] toBytes(CPIMMessage cpim) {
+        try {
+            return cpim.toByteArray();
+        } catch (UnsupportedEncodingException ex) {
+            LOGGER.log(Level.WARNING, "UTF-8 not supported", ex);
+            return cpim.toString().getBytes();
+        }
+    }
+
+    /** Writes plain data to the (signing) literal data stream. */
+    private interface PlainWriter {
+        void writeTo(OutputStream literalOut) throws IOException;
+    }
+
     /**
-     * Encrypt, sign and write input stream data to output stream.
-     * Input and output stream are closed.
-     * @return true on success, else false
+     * Encrypt, sign and write plain data to output stream.
      */
     private static void encryptAndSign(
-            InputStream plainInput, OutputStream encryptedOutput,
+            PlainWriter plainWriter, OutputStream encryptedOutput,
             PersonalKey myKey, List<PGPUtils.PGPCoderKey> receiverKeys)
             throws IOException, PGPException {
 
         // setup data encryptor & generator
-        BcPGPDataEncryptorBuilder encryptor = new BcPGPDataEncryptorBuilder(PGPEncryptedData.AES_192);
-        encryptor.setWithIntegrityPacket(true);
-        encryptor.setSecureRandom(new SecureRandom());
+        PGPEncryptedDataGenerator encGen = new PGPEncryptedDataGenerator(DATA_ENCRYPTOR);
 
         // add public key recipients
-        PGPEncryptedDataGenerator encGen = new PGPEncryptedDataGenerator(encryptor);
         receiverKeys.stream().forEach(key ->
-            encGen.addMethod(new BcPublicKeyKeyEncryptionMethodGenerator(key.encryptKey)));
+            encGen.addMethod(new BcPublicKeyKeyEncryptionMethodGenerator(key.encryptKey)
+                    .setSecureRandom(PGPUtils.RANDOM)));
 
         OutputStream encryptedOut = encGen.open(encryptedOutput, new byte[BUFFER_SIZE]);
 
@@ -186,9 +193,7 @@ final class Encryptor {
         OutputStream compressedOut = compGen.open(encryptedOut, new byte[BUFFER_SIZE]);
 
         // setup signature generator
-        int algo = myKey.getSigningAlgorithm();
-        PGPSignatureGenerator sigGen = new PGPSignatureGenerator(
-                new BcPGPContentSignerBuilder(algo, HashAlgorithmTags.SHA256));
+        PGPSignatureGenerator sigGen = new PGPSignatureGenerator(myKey.getSignerBuilder());
         sigGen.init(PGPSignature.BINARY_DOCUMENT, myKey.getPrivateSigningKey());
 
         PGPSignatureSubpacketGenerator spGen = new PGPSignatureSubpacketGenerator();
@@ -206,15 +211,8 @@ final class Encryptor {
             new Date(),
             new byte[BUFFER_SIZE]);
 
-        // read the "in" stream, compress, encrypt and write to the "out" stream
-        // this must be done if clear data is bigger than the buffer size
-        // but there are other ways to optimize...
-        byte[] buf = new byte[BUFFER_SIZE];
-        int len;
-        while ((len = plainInput.read(buf)) > 0) {
-            literalOut.write(buf, 0, len);
-            sigGen.update(buf, 0, len);
-        }
+        // compress, encrypt and write to the "out" stream, no intermediate copy
+        plainWriter.writeTo(new SigningOutputStream(literalOut, sigGen));
 
         literalGen.close();
 
@@ -223,4 +221,30 @@ final class Encryptor {
         compGen.close();
         encGen.close();
     }
+
+    /** Passes all written data to the signature generator. Does not close. */
+    private static final class SigningOutputStream extends FilterOutputStream {
+        private final PGPSignatureGenerator mSigGen;
+
+        SigningOutputStream(OutputStream out, PGPSignatureGenerator sigGen) {
+            super(out);
+            mSigGen = sigGen;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mSigGen.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mSigGen.update(b, off, len);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
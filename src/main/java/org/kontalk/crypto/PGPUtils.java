@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.Security;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -77,6 +78,9 @@ public final class PGPUtils {
     /** The fingerprint calculator to use whenever it is needed. */
     static final KeyFingerPrintCalculator FP_CALC = new BcKeyFingerprintCalculator();
 
+    /** Random source for all en-/decryption, seeded only once. */
+    static final SecureRandom RANDOM = new SecureRandom();
+
     /** Singleton for converting a PGP key to a JCA key. */
     private static JcaPGPKeyConverter sKeyConverter;
 
@@ -27,7 +27,13 @@ import java.security.PrivateKey;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.bouncycastle.openpgp.PGPException;
@@ -36,9 +42,14 @@ import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
 import org.bouncycastle.openpgp.PGPPublicKeyRing;
 import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
 import org.bouncycastle.openpgp.PGPSecretKeyRing;
 import org.bouncycastle.openpgp.bc.BcPGPPublicKeyRing;
 import org.bouncycastle.openpgp.operator.PBESecretKeyDecryptor;
+import org.bouncycastle.openpgp.operator.PGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPublicKeyDataDecryptorFactory;
 import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.util.encoders.Hex;
@@ -46,6 +57,9 @@ import org.kontalk.misc.KonException;
 
 /**
  * Personal PGP key(s).
+ *
+ * Also holds the crypto operators that only depend on the own key. They are
+ * created once on load and shared by all encryptions and decryptions.
  */
 public final class PersonalKey {
     private static final Logger LOGGER = Logger.getLogger(PersonalKey.class.getName());
@@ -62,6 +76,10 @@ public final class PersonalKey {
     private final X509Certificate mBridgeCert;
     /** Primary user ID. */
     private final String mUID;
+    /** Signer for outgoing data, using the signing key. */
+    private final PGPContentSignerBuilder mSignerBuilder;
+    /** Session key decryptor for incoming data, using the encryption key. */
+    private final PublicKeyDataDecryptorFactory mDecryptorFactory;
 
     private PersonalKey(PGPKeyPair authKP,
             PGPKeyPair signKP,
@@ -74,6 +92,12 @@ public final class PersonalKey {
         mEncryptKey = encryptKP;
         mBridgeCert = bridgeCert;
         mUID = uid;
+
+        BcPGPContentSignerBuilder signerBuilder = new BcPGPContentSignerBuilder(
+                signKP.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256);
+        signerBuilder.setSecureRandom(PGPUtils.RANDOM);
+        mSignerBuilder = signerBuilder;
+        mDecryptorFactory = new BcPublicKeyDataDecryptorFactory(encryptKP.getPrivateKey());
     }
 
     PGPPrivateKey getPrivateEncryptionKey() {
@@ -84,8 +108,12 @@ public final class PersonalKey {
         return mSignKey.getPrivateKey();
     }
 
-    int getSigningAlgorithm() {
-        return mSignKey.getPublicKey().getAlgorithm();
+    PGPContentSignerBuilder getSignerBuilder() {
+        return mSignerBuilder;
+    }
+
+    PublicKeyDataDecryptorFactory getDecryptorFactory() {
+        return mDecryptorFactory;
     }
 
     PGPPublicKey getPublicEncryptionKey() {
@@ -158,12 +186,15 @@ public final class PersonalKey {
         }
 
         // decrypt private keys
-        PBESecretKeyDecryptor decryptor = new JcePBESecretKeyDecryptorBuilder()
-                .setProvider(PGPUtils.PROVIDER)
-                .build(passphrase);
-        PGPKeyPair authKeyPair = PGPUtils.decrypt(authKey, decryptor);
-        PGPKeyPair signKeyPair = PGPUtils.decrypt(signKey, decryptor);
-        PGPKeyPair encryptKeyPair = PGPUtils.decrypt(encrKey, decryptor);
+        List<PGPSecretKey> secretKeys = new ArrayList<>(3);
+        secretKeys.add(authKey);
+        if (signKey != authKey)
+            secretKeys.add(signKey);
+        secretKeys.add(encrKey);
+        List<PGPKeyPair> keyPairs = decrypt(secretKeys, passphrase);
+        PGPKeyPair authKeyPair = keyPairs.get(0);
+        PGPKeyPair signKeyPair = keyPairs.get(secretKeys.indexOf(signKey));
+        PGPKeyPair encryptKeyPair = keyPairs.get(keyPairs.size() - 1);
 
         // user ID
         Iterator<?> uidIt = authKey.getUserIDs();
@@ -192,6 +223,44 @@ public final class PersonalKey {
         return new PersonalKey(authKeyPair, signKeyPair, encryptKeyPair, bridgeCert, uid);
     }
 
+    /**
+     * Decrypt secret keys in parallel. Each decryption has to do the
+     * (expensive) iterated hashing of the passphrase on its own.
+     */
+    private static List<PGPKeyPair> decrypt(List<PGPSecretKey> secretKeys,
+            char[] passphrase) throws KonException {
+        ExecutorService executor = Executors.newFixedThreadPool(secretKeys.size());
+        try {
+            List<Future<PGPKeyPair>> futures = new ArrayList<>(secretKeys.size());
+            for (PGPSecretKey secretKey : secretKeys) {
+                futures.add(executor.submit(() -> {
+                    // decryptor is not shared between threads
+                    PBESecretKeyDecryptor decryptor = new JcePBESecretKeyDecryptorBuilder()
+                            .setProvider(PGPUtils.PROVIDER)
+                            .build(passphrase);
+                    return PGPUtils.decrypt(secretKey, decryptor);
+                }));
+            }
+            List<PGPKeyPair> keyPairs = new ArrayList<>(futures.size());
+            for (Future<PGPKeyPair> future : futures)
+                keyPairs.add(future.get());
+            return keyPairs;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof KonException)
+                throw (KonException) cause;
+            LOGGER.log(Level.WARNING, "can't decrypt key", cause);
+            throw new KonException(KonException.Error.LOAD_KEY_DECRYPT,
+                    cause instanceof Exception ? (Exception) cause : ex);
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "interrupted while decrypting keys", ex);
+            Thread.currentThread().interrupt();
+            throw new KonException(KonException.Error.LOAD_KEY_DECRYPT, ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private static X509Certificate createX509Certificate(PGPKeyPair keyPair,
             PGPPublicKeyRing keyRing)
             throws KonException {
@@ -18,7 +18,9 @@
 
 package org.kontalk.misc;
 
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import org.apache.commons.lang.StringUtils;
 import org.jxmpp.jid.util.JidUtil;
 import org.jxmpp.stringprep.simple.SimpleXmppStringprep;
@@ -30,6 +32,9 @@ import org.jxmpp.util.XmppStringUtils;
  * NOTE: manual JID escaping (XEP-0106) is not supported here. Better mark JIDs
  * e.g. with spaces in local part as invalid.
  *
+ * Instances created from strings are interned: parsing, normalization and
+ * validation is done only once for each distinct string.
+ *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
 public final class JID {
@@ -39,16 +44,32 @@ public final class JID {
         SimpleXmppStringprep.setup();
     }
 
+    /** Max number of interned JIDs, pool is cleared when exceeded. */
+    private static final int MAX_POOL_SIZE = 10000;
+    private static final Map<String, JID> FULL_POOL = new ConcurrentHashMap<>();
+    private static final Map<String, JID> BARE_POOL = new ConcurrentHashMap<>();
+
     private final String mLocal;
     private final String mDomain;
     private final String mResource;
     private final boolean mValid;
 
+    // normalized bare JID, used for comparing
+    private final String mKey;
+    private final int mHash;
+    private final String mString;
+    // lazy, racy but safe: object is immutable
+    private JID mBare = null;
+
     private JID(String local, String domain, String resource) {
         mLocal = local;
         mDomain = domain;
         mResource = resource;
 
+        mKey = mLocal.toLowerCase() + "@" + mDomain.toLowerCase();
+        mHash = mKey.hashCode();
+        mString = XmppStringUtils.completeJidFrom(mLocal, mDomain, mResource);
+
         mValid = !mLocal.isEmpty() && !mDomain.isEmpty()
                 // NOTE: domain check could be stronger - compliant with RFC 6122, but
                 // server does not accept most special characters
@@ -66,7 +87,7 @@ public final class JID {
     }
 
     public String string() {
-        return XmppStringUtils.completeJidFrom(mLocal, mDomain, mResource);
+        return mString;
     }
 
     public boolean isValid() {
@@ -82,7 +103,15 @@ public final class JID {
     }
 
     public JID toBare() {
-        return new JID(mLocal, mDomain, "");
+        if (!this.isFull())
+            return this;
+
+        JID bare = mBare;
+        if (bare == null) {
+            bare = new JID(mLocal, mDomain, "");
+            mBare = bare;
+        }
+        return bare;
     }
 
     /**
@@ -98,16 +127,12 @@ public final class JID {
            return false;
 
        JID oJID = (JID) o;
-       return mLocal.equalsIgnoreCase(oJID.mLocal) &&
-               mDomain.equalsIgnoreCase(oJID.mDomain);
+       return mHash == oJID.mHash && mKey.equals(oJID.mKey);
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 17 * hash + Objects.hashCode(this.mLocal.toLowerCase());
-        hash = 17 * hash + Objects.hashCode(this.mDomain.toLowerCase());
-        return hash;
+        return mHash;
     }
 
     @Override
@@ -117,22 +142,36 @@ public final class JID {
 
     public static JID full(String jid) {
         jid = StringUtils.defaultString(jid);
-        return new JID(XmppStringUtils.parseLocalpart(jid),
-                XmppStringUtils.parseDomain(jid),
-                XmppStringUtils.parseResource(jid));
+        return intern(FULL_POOL, jid, s -> new JID(
+                XmppStringUtils.parseLocalpart(s),
+                XmppStringUtils.parseDomain(s),
+                XmppStringUtils.parseResource(s)));
     }
 
     public static JID bare(String jid) {
         jid = StringUtils.defaultString(jid);
-        return new JID(XmppStringUtils.parseLocalpart(jid),
-                XmppStringUtils.parseDomain(jid),
-                "");
+        return intern(BARE_POOL, jid, s -> new JID(
+                XmppStringUtils.parseLocalpart(s),
+                XmppStringUtils.parseDomain(s),
+                ""));
     }
 
     public static JID bare(String local, String domain) {
         return new JID(local, domain, "");
     }
 
+    private static JID intern(Map<String, JID> pool, String key,
+            Function<String, JID> creator) {
+        JID jid = pool.get(key);
+        if (jid != null)
+            return jid;
+
+        if (pool.size() >= MAX_POOL_SIZE)
+            pool.clear();
+
+        return pool.computeIfAbsent(key, creator);
+    }
+
     public static JID deleted(int id) {
         return new JID("", Integer.toString(id), "");
     }
@@ -0,0 +1,281 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.misc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.kontalk.util.EncodingUtils;
+
+/**
+ * Records wall time, allocated bytes and database queries of the application
+ * startup phases. Disabled by default, all methods are no-ops then.
+ *
+ * Phases may overlap and end on another thread than they began. Allocations
+ * are summed over all live threads and are only an estimate.
+ */
+public final class StartupProfiler {
+    private static final Logger LOGGER = Logger.getLogger(StartupProfiler.class.getName());
+
+    public static final String FILENAME = "startup_profile.json";
+
+    /**
+     * Phases not ended this long after finishing are dropped, e.g. first
+     * frame when started hidden in tray.
+     */
+    private static final long REPORT_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
+    public enum Phase {
+        LOCK,
+        CONFIG,
+        /** Open and migrate database. */
+        DATABASE,
+        CONTACTS,
+        /** Load chats with their messages. */
+        CHATS,
+        KEY_UNLOCK,
+        /** Create view until main frame is painted. */
+        FIRST_FRAME,
+        /** First connection attempt until connected or failed. */
+        CONNECTED
+    }
+
+    private static final Map<Phase, Record> RECORDS = new EnumMap<>(Phase.class);
+    private static final AtomicLong QUERIES = new AtomicLong();
+
+    private static volatile boolean ENABLED = false;
+    private static Path EXPORT_FILE = null;
+    private static long START_NANOS;
+    private static boolean FINISHING = false;
+    private static boolean DONE = false;
+
+    private StartupProfiler() {}
+
+    /**
+     * Enable profiling, must be called before the first phase begins.
+     * @param exportFile the report is also written to this file as JSON
+     */
+    public static synchronized void enable(Path exportFile) {
+        EXPORT_FILE = exportFile;
+        START_NANOS = System.nanoTime();
+        ENABLED = true;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static void begin(Phase phase) {
+        if (!ENABLED)
+            return;
+
+        long allocated = allocatedBytes();
+        long now = System.nanoTime();
+        synchronized (StartupProfiler.class) {
+            if (DONE || RECORDS.containsKey(phase))
+                return;
+            RECORDS.put(phase, new Record(now, allocated, QUERIES.get()));
+        }
+    }
+
+    public static void end(Phase phase) {
+        if (!ENABLED)
+            return;
+
+        long now = System.nanoTime();
+        long allocated = allocatedBytes();
+        synchronized (StartupProfiler.class) {
+            Record record = RECORDS.get(phase);
+            if (DONE || record == null || record.isEnded())
+                return;
+            record.end(now, allocated, QUERIES.get());
+        }
+        mayReport();
+    }
+
+    /** Count one database query. */
+    public static void onQuery() {
+        if (ENABLED)
+            QUERIES.incrementAndGet();
+    }
+
+    /**
+     * Report the profile as soon as all begun phases have ended.
+     * Phases that did not begin until then are not included, phases that did
+     * not end within a timeout are dropped.
+     */
+    public static void finish() {
+        if (!ENABLED)
+            return;
+
+        synchronized (StartupProfiler.class) {
+            if (FINISHING)
+                return;
+            FINISHING = true;
+        }
+
+        Timer timer = new Timer("Startup Profiler", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (StartupProfiler.class) {
+                    List<Phase> dropped = RECORDS.entrySet().stream()
+                            .filter(e -> !e.getValue().isEnded())
+                            .map(e -> e.getKey())
+                            .collect(Collectors.toList());
+                    if (!DONE && !dropped.isEmpty()) {
+                        LOGGER.info("dropping unfinished phases: "+dropped);
+                        RECORDS.keySet().removeAll(dropped);
+                    }
+                }
+                mayReport();
+                timer.cancel();
+            }
+        }, REPORT_TIMEOUT);
+
+        mayReport();
+    }
+
+    private static void mayReport() {
+        JSONObject json;
+        synchronized (StartupProfiler.class) {
+            if (!FINISHING || DONE)
+                return;
+            if (RECORDS.values().stream().anyMatch(r -> !r.isEnded()))
+                return;
+            DONE = true;
+            json = toJSON();
+        }
+
+        String eol = EncodingUtils.EOL;
+        StringBuilder report = new StringBuilder("startup profile" + eol);
+        report.append(String.format("%-12s %10s %10s %12s %8s" + eol,
+                "phase", "start ms", "time ms", "alloc KB", "queries"));
+        for (Map.Entry<Phase, Record> e : RECORDS.entrySet()) {
+            Record r = e.getValue();
+            report.append(String.format("%-12s %10d %10d %12d %8d" + eol,
+                    e.getKey().name().toLowerCase(),
+                    millis(r.mStartNanos - START_NANOS),
+                    millis(r.mEndNanos - r.mStartNanos),
+                    r.allocated() / 1024,
+                    r.mEndQueries - r.mStartQueries));
+        }
+        LOGGER.info(report.toString());
+
+        if (EXPORT_FILE == null)
+            return;
+        try {
+            Files.write(EXPORT_FILE, json.toJSONString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "can't write startup profile", ex);
+            return;
+        }
+        LOGGER.info("startup profile written to "+EXPORT_FILE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSON() {
+        JSONArray phases = new JSONArray();
+        for (Map.Entry<Phase, Record> e : RECORDS.entrySet()) {
+            Record r = e.getValue();
+            JSONObject phase = new JSONObject();
+            phase.put("phase", e.getKey().name().toLowerCase());
+            phase.put("start_ms", millis(r.mStartNanos - START_NANOS));
+            phase.put("time_ms", millis(r.mEndNanos - r.mStartNanos));
+            phase.put("allocated_bytes", r.allocated());
+            phase.put("queries", r.mEndQueries - r.mStartQueries);
+            phases.add(phase);
+        }
+        JSONObject json = new JSONObject();
+        json.put("total_ms", millis(System.nanoTime() - START_NANOS));
+        json.put("queries", QUERIES.get());
+        json.put("phases", phases);
+        return json;
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    /** Bytes allocated by all live threads, -1 if not supported by JVM. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() ||
+                !sunBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+
+        long sum = 0;
+        for (long bytes : sunBean.getThreadAllocatedBytes(sunBean.getAllThreadIds())) {
+            // -1 for threads that died in between
+            if (bytes > 0)
+                sum += bytes;
+        }
+        return sum;
+    }
+
+    private static final class Record {
+        private final long mStartNanos;
+        private final long mStartAllocated;
+        private final long mStartQueries;
+        private long mEndNanos = -1;
+        private long mEndAllocated;
+        private long mEndQueries;
+
+        Record(long nanos, long allocated, long queries) {
+            mStartNanos = nanos;
+            mStartAllocated = allocated;
+            mStartQueries = queries;
+        }
+
+        void end(long nanos, long allocated, long queries) {
+            mEndNanos = nanos;
+            mEndAllocated = allocated;
+            mEndQueries = queries;
+        }
+
+        boolean isEnded() {
+            return mEndNanos >= 0;
+        }
+
+        long allocated() {
+            return mStartAllocated < 0 || mEndAllocated < 0 ?
+                    -1 :
+                    Math.max(0, mEndAllocated - mStartAllocated);
+        }
+    }
+}
@@ -23,12 +23,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.kontalk.util.ImageScaler;
 import org.kontalk.util.MediaUtils;
 
 
@@ -41,12 +44,16 @@ public abstract class Avatar {
     private static final Logger LOGGER = Logger.getLogger(Avatar.class.getName());
 
     private static final String DIR = "avatars";
+    private static final String THUMB_DIR = "thumbs";
     protected static final String FORMAT = "png";
 
     static void createStorageDir(Path appDir) {
         boolean created = appDir.resolve(DIR).toFile().mkdir();
         if (created)
             LOGGER.info("created avatar directory");
+        created = appDir.resolve(DIR).resolve(THUMB_DIR).toFile().mkdir();
+        if (created)
+            LOGGER.info("created avatar thumbnail directory");
     }
 
     /** SHA1 hash of image data. */
@@ -85,10 +92,49 @@ public abstract class Avatar {
         return Optional.ofNullable(mImage);
     }
 
+    /**
+     * Load image scaled down to maximum width/height of size.
+     *
+     * Scaled images are saved as thumbnail files and reused, the full image is
+     * not kept in memory.
+     */
+    public Optional<BufferedImage> loadImage(int size) {
+        File thumbFile = thumbnailFile(this.thumbnailKey(), size);
+        if (thumbFile.isFile()) {
+            BufferedImage thumb = image(thumbFile);
+            if (thumb != null)
+                return Optional.of(thumb);
+        }
+
+        BufferedImage img = mImage != null ? mImage : image(mFile);
+        if (img == null)
+            return Optional.empty();
+
+        BufferedImage thumb = ImageScaler.scale(img, size, size);
+        boolean succ = MediaUtils.writeImage(thumb, FORMAT, thumbFile);
+        if (!succ)
+            LOGGER.warning("can't save avatar thumbnail: "+mID);
+        return Optional.of(thumb);
+    }
+
+    /** Unique key for the image of this avatar, used for thumbnail files. */
+    protected String thumbnailKey() {
+        return mID;
+    }
+
     void delete() {
         boolean succ = mFile.delete();
         if (!succ)
             LOGGER.warning("could not delete avatar file: "+mID);
+
+        File[] thumbs = thumbnailDir().listFiles(
+                (dir, name) -> name.startsWith(mID + "_"));
+        if (thumbs == null)
+            return;
+        for (File thumb : thumbs) {
+            if (!thumb.delete())
+                LOGGER.warning("could not delete avatar thumbnail: "+thumb);
+        }
     }
 
     protected boolean abstractEquals(Avatar oAvatar) {
@@ -103,24 +149,60 @@ public abstract class Avatar {
 
     public static class DefaultAvatar extends Avatar {
 
+        // the same image file can be used by more than one contact, number of
+        // avatar instances for each ID
+        private static final Map<String, Integer> REF_COUNT = new HashMap<>();
+
         /** Saved published contact avatar. */
         static Optional<DefaultAvatar> load(String id) {
-            File file = avatarFile(id);
-            if (!file.isFile()) {
-                LOGGER.warning("no file: "+file);
-                return Optional.empty();
-            }
+            Optional<DefaultAvatar> avatar = stored(id);
+            if (!avatar.isPresent())
+                LOGGER.warning("no file: "+avatarFile(id));
 
-            return Optional.of(new DefaultAvatar(id, file));
+            return avatar;
+        }
+
+        /** Published contact avatar, if already saved for any contact. */
+        public static Optional<DefaultAvatar> stored(String id) {
+            File file = avatarFile(id);
+            return file.isFile() ?
+                    Optional.of(new DefaultAvatar(id, file)) :
+                    Optional.empty();
         }
 
         private DefaultAvatar(String id, File file) {
             super(id, file, null);
+            retain(id);
         }
 
         /** New published contact avatar. */
         public DefaultAvatar(String id, BufferedImage image) {
             super(id, null, image);
+            retain(id);
+        }
+
+        @Override
+        void delete() {
+            if (release(this.getID()))
+                super.delete();
+        }
+
+        private static void retain(String id) {
+            synchronized (REF_COUNT) {
+                REF_COUNT.merge(id, 1, Integer::sum);
+            }
+        }
+
+        /** Return true if avatar is not used anymore. */
+        private static boolean release(String id) {
+            synchronized (REF_COUNT) {
+                Integer count = REF_COUNT.merge(id, -1, Integer::sum);
+                if (count > 0)
+                    return false;
+
+                REF_COUNT.remove(id);
+                return true;
+            }
         }
 
         @Override
@@ -165,6 +247,11 @@ public abstract class Avatar {
             mLastModified = mFile.lastModified();
         }
 
+        @Override
+        protected String thumbnailKey() {
+            return super.thumbnailKey() + "_" + mLastModified;
+        }
+
         @Override
         public final boolean equals(Object o) {
             if (this == o)
@@ -211,7 +298,7 @@ public abstract class Avatar {
         }
 
         public static UserAvatar set(BufferedImage image) {
-            return INSTANCE = new UserAvatar(MediaUtils.scale(image, MAX_SIZE, MAX_SIZE));
+            return INSTANCE = new UserAvatar(ImageScaler.scale(image, MAX_SIZE, MAX_SIZE));
         }
 
         /** New user Avatar. ID generated from image. */
@@ -245,6 +332,14 @@ public abstract class Avatar {
         return Model.appDir().resolve(DIR).resolve(id + "." + FORMAT).toFile();
     }
 
+    private static File thumbnailDir() {
+        return Model.appDir().resolve(DIR).resolve(THUMB_DIR).toFile();
+    }
+
+    private static File thumbnailFile(String key, int size) {
+        return new File(thumbnailDir(), key + "_" + size + "." + FORMAT);
+    }
+
     private static String id(BufferedImage image) {
         byte[] imageData = imageData(image);
         return imageData != null ? DigestUtils.sha1Hex(imageData) : "";
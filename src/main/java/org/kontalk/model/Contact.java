@@ -23,10 +23,12 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,7 +49,8 @@ import org.kontalk.util.XMPPUtils;
  *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
-public final class Contact extends Observable implements Searchable {
+public final class Contact extends Observable
+        implements Searchable, FlushScheduler.Flushable {
     private static final Logger LOGGER = Logger.getLogger(Contact.class.getName());
 
     /**
@@ -102,7 +105,8 @@ public final class Contact extends Observable implements Searchable {
     //private ItemType mType;
     private Avatar.DefaultAvatar mAvatar = null;
     private Avatar.CustomAvatar mCustomAvatar = null;
-    private boolean mSaveOnShutdown = false;
+    /** Columns changed but not yet written. */
+    private final Set<String> mDirty = new HashSet<>(); // guarded by this
 
     // new contact (eg from roster)
     Contact(JID jid, String name) {
@@ -163,7 +167,7 @@ public final class Contact extends Observable implements Searchable {
         }
 
         mJID = jid;
-        this.save();
+        this.save(COL_JID);
         this.changed(ViewChange.JID);
     }
 
@@ -180,7 +184,7 @@ public final class Contact extends Observable implements Searchable {
             return;
 
         mName = name;
-        this.save();
+        this.save(COL_NAME);
 
         this.changed(ViewChange.NAME);
     }
@@ -196,12 +200,12 @@ public final class Contact extends Observable implements Searchable {
     public void setLastSeen(Date lastSeen, String status) {
         if (!lastSeen.equals(mLastSeen)) {
             mLastSeen = lastSeen;
-            mSaveOnShutdown = true;
+            this.saveLater(COL_LAST_SEEN);
             this.changed(ViewChange.LAST_SEEN);
         }
         if (!status.isEmpty() && !status.equals(mStatus)) {
             mStatus = status;
-            mSaveOnShutdown = true;
+            this.saveLater(COL_STAT);
             // notify on status change not required
         }
     }
@@ -215,7 +219,7 @@ public final class Contact extends Observable implements Searchable {
             return;
 
         mEncrypted = encrypted;
-        this.save();
+        this.save(COL_ENCR);
     }
 
     public Online getOnline() {
@@ -227,7 +231,7 @@ public final class Contact extends Observable implements Searchable {
             return;
 
         mStatus = status;
-        mSaveOnShutdown = true;
+        this.saveLater(COL_STAT);
         // notify on status change not required
     }
 
@@ -238,7 +242,7 @@ public final class Contact extends Observable implements Searchable {
         if (onlineStatus == Online.YES ||
                 (onlineStatus == Online.NO && mOnline == Online.YES)) {
             mLastSeen = new Date();
-            mSaveOnShutdown = true;
+            this.saveLater(COL_LAST_SEEN);
             // notify on last_seen change not required here
         }
 
@@ -264,7 +268,7 @@ public final class Contact extends Observable implements Searchable {
 
         mKey = EncodingUtils.bytesToBase64(rawKey);
         mFingerprint = fingerprint.toLowerCase();
-        this.save();
+        this.save(COL_PUB_KEY, COL_KEY_FP);
         this.changed(ViewChange.KEY);
     }
 
@@ -307,7 +311,7 @@ public final class Contact extends Observable implements Searchable {
 
         // set new
         mAvatar = avatar;
-        this.save();
+        this.save(COL_AVATAR_ID);
 
         if (mCustomAvatar == null)
             this.changed(ViewChange.AVATAR);
@@ -319,7 +323,7 @@ public final class Contact extends Observable implements Searchable {
 
         mAvatar.delete();
         mAvatar = null;
-        this.save();
+        this.save(COL_AVATAR_ID);
 
         this.changed(ViewChange.AVATAR);
     }
@@ -369,7 +373,8 @@ public final class Contact extends Observable implements Searchable {
             mAvatar.delete();
         mAvatar = null;
 
-        this.save();
+        this.save(COL_JID, COL_NAME, COL_STAT, COL_LAST_SEEN, COL_ENCR,
+                COL_PUB_KEY, COL_KEY_FP, COL_AVATAR_ID);
         this.changed(ViewChange.DELETED);
     }
 
@@ -378,23 +383,48 @@ public final class Contact extends Observable implements Searchable {
     }
 
     void onShutDown() {
-        if (!this.isDeleted() && mSaveOnShutdown)
-            this.save();
+        this.takeChanges().ifPresent(Runnable::run);
     }
 
-    private void save() {
+    /** Schedule writing of changed columns. */
+    private void save(String... columns) {
+        this.saveLater(columns);
+        Model.flusher().schedule(this);
+    }
+
+    /** Mark columns as changed, written with the next save or on shutdown. */
+    private synchronized void saveLater(String... columns) {
+        mDirty.addAll(Arrays.asList(columns));
+    }
+
+    @Override
+    public Optional<Runnable> takeChanges() {
         Map<String, Object> set = new HashMap<>();
-        set.put(COL_JID, mJID);
-        set.put(COL_NAME, mName);
-        set.put(COL_STAT, mStatus);
-        set.put(COL_LAST_SEEN, mLastSeen);
-        set.put(COL_ENCR, mEncrypted);
-        set.put(COL_PUB_KEY, Database.setString(mKey));
-        set.put(COL_KEY_FP, Database.setString(mFingerprint));
-        set.put(COL_AVATAR_ID, Database.setString(mAvatar != null ? mAvatar.getID() : ""));
-        Model.database().execUpdate(TABLE, set, mID);
-
-        mSaveOnShutdown = false;
+        synchronized (this) {
+            for (String column : mDirty)
+                set.put(column, this.columnValue(column));
+            mDirty.clear();
+        }
+        if (set.isEmpty())
+            return Optional.empty();
+
+        return Optional.of(() -> Model.database().execUpdate(TABLE, set, mID));
+    }
+
+    private Object columnValue(String column) {
+        switch (column) {
+            case COL_JID: return mJID;
+            case COL_NAME: return mName;
+            case COL_STAT: return mStatus;
+            case COL_LAST_SEEN: return mLastSeen;
+            case COL_ENCR: return mEncrypted;
+            case COL_PUB_KEY: return Database.setString(mKey);
+            case COL_KEY_FP: return Database.setString(mFingerprint);
+            case COL_AVATAR_ID:
+                return Database.setString(mAvatar != null ? mAvatar.getID() : "");
+            default:
+                throw new IllegalArgumentException("unknown column: "+column);
+        }
     }
 
     private void changed(ViewChange change) {
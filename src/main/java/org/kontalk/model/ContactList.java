@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Observable;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -44,8 +45,12 @@ public final class ContactList extends Observable {
 
     private enum ViewChange { MODIFIED }
 
-    private final Map<JID, Contact> mJIDMap =
-            Collections.synchronizedMap(new HashMap<JID, Contact>());
+    // keyed by bare JID (JID equality ignores resource), lock-free lookup
+    private final Map<JID, Contact> mJIDMap = new ConcurrentHashMap<>();
+
+    // set while the current thread applies a batch, changes of other
+    // threads are still notified
+    private final ThreadLocal<Boolean> mInBatch = ThreadLocal.withInitial(() -> false);
 
     ContactList() {}
 
@@ -94,6 +99,28 @@ public final class ContactList extends Observable {
         return Optional.of(newContact);
     }
 
+    /**
+     * Apply many changes at once: all database writes are done in one
+     * transaction and the list notifies its observers only once, after the
+     * commit.
+     *
+     * @return false if the changes were rolled back
+     */
+    public boolean batch(Runnable changes) {
+        boolean outer = !mInBatch.get();
+        mInBatch.set(true);
+        boolean committed;
+        try {
+            committed = Model.database().execTransaction(changes);
+        } finally {
+            if (outer)
+                mInBatch.remove();
+        }
+        if (outer)
+            this.changed(ViewChange.MODIFIED);
+        return committed;
+    }
+
     /**
      * Get the contact for a JID (if the JID is in the list).
      * Resource is removed for lookup.
@@ -114,14 +141,12 @@ public final class ContactList extends Observable {
     }
 
     public Set<Contact> getAll(boolean withMe, boolean blocked) {
-        synchronized(mJIDMap) {
-            return Collections.unmodifiableSet(
-                    mJIDMap.values().stream()
-                            .filter(c ->
-                                    (blocked || !c.isBlocked()) &&
-                                    (withMe || !c.isMe()))
-                            .collect(Collectors.toSet()));
-        }
+        return Collections.unmodifiableSet(
+                mJIDMap.values().stream()
+                        .filter(c ->
+                                (blocked || !c.isBlocked()) &&
+                                (withMe || !c.isMe()))
+                        .collect(Collectors.toSet()));
     }
 
     public void delete(Contact contact) {
@@ -173,6 +198,9 @@ public final class ContactList extends Observable {
     }
 
     private void changed(ViewChange change) {
+        if (mInBatch.get())
+            return;
+
         this.setChanged();
         this.notifyObservers(change);
     }
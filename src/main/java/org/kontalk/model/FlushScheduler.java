@@ -0,0 +1,116 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kontalk.persistence.Database;
+
+/**
+ * Writes changed model objects to database with a short delay. All objects
+ * changed within the delay are written in one transaction.
+ */
+public final class FlushScheduler {
+    private static final Logger LOGGER = Logger.getLogger(FlushScheduler.class.getName());
+
+    private static final long DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /** A model object with changed values not yet written to database. */
+    public interface Flushable {
+        /**
+         * Take all changed values. The returned update writes them to
+         * database, it must not lock the object. Empty if nothing changed.
+         */
+        Optional<Runnable> takeChanges();
+    }
+
+    private final Database mDB;
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    // guarded by this
+    private final Set<Flushable> mDirty =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+
+    FlushScheduler(Database db) {
+        mDB = db;
+        mExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "Model Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // delayed flush is replaced by final flush on shutdown
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    public synchronized void schedule(Flushable flushable) {
+        boolean first = mDirty.isEmpty();
+        mDirty.add(flushable);
+        if (first && !mExecutor.isShutdown())
+            mExecutor.schedule(() -> this.flushAll(), DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop scheduling, wait for a running flush and write all remaining
+     * objects. Database can be closed afterwards.
+     */
+    public void shutDown() {
+        mExecutor.shutdown();
+        try {
+            boolean terminated = mExecutor.awaitTermination(SHUTDOWN_TIMEOUT,
+                    TimeUnit.MILLISECONDS);
+            if (!terminated)
+                LOGGER.warning("flusher did not terminate");
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING, "interrupted while waiting for flusher", ex);
+        }
+        this.flushAll();
+    }
+
+    /** Write all scheduled objects now. */
+    public void flushAll() {
+        List<Flushable> dirty;
+        synchronized (this) {
+            dirty = new ArrayList<>(mDirty);
+            mDirty.clear();
+        }
+        if (dirty.isEmpty())
+            return;
+
+        // collect values before locking the database, objects lock themselves
+        // and may access the database while locked
+        List<Runnable> updates = new ArrayList<>(dirty.size());
+        for (Flushable flushable : dirty)
+            flushable.takeChanges().ifPresent(updates::add);
+        if (updates.isEmpty())
+            return;
+
+        LOGGER.config("flushing "+updates.size()+" objects");
+        mDB.execTransaction(() -> updates.forEach(Runnable::run));
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
 import org.kontalk.misc.JID;
+import org.kontalk.misc.StartupProfiler;
 import org.kontalk.model.chat.Chat;
 import org.kontalk.model.chat.ChatList;
 import org.kontalk.model.message.InMessage;
@@ -45,6 +46,7 @@ public final class Model {
     private static Model INSTANCE = null;
     private static Path APP_DIR;
     private static Database DATABASE;
+    private static FlushScheduler FLUSHER;
 
     private final ContactList mContactList;
     private final ChatList mChatList;
@@ -52,6 +54,7 @@ public final class Model {
 
     private Model(Database db, Path appDir) {
         DATABASE = db;
+        FLUSHER = new FlushScheduler(db);
         APP_DIR = appDir;
 
         mAccount = new Account(APP_DIR, Config.getInstance());
@@ -84,8 +87,13 @@ public final class Model {
 
     public void load() {
         // order matters!
+        StartupProfiler.begin(StartupProfiler.Phase.CONTACTS);
         Map<Integer, Contact> contactMap = mContactList.load();
+        StartupProfiler.end(StartupProfiler.Phase.CONTACTS);
+
+        StartupProfiler.begin(StartupProfiler.Phase.CHATS);
         mChatList.load(contactMap);
+        StartupProfiler.end(StartupProfiler.Phase.CHATS);
     }
 
     public void setUserJID(JID jid) {
@@ -144,11 +152,19 @@ public final class Model {
         return DATABASE;
     }
 
+    public static FlushScheduler flusher(){
+        if (FLUSHER == null)
+            throw new IllegalStateException("model not set up");
+
+        return FLUSHER;
+    }
+
     public static JID getUserJID() {
         return JID.bare(Config.getInstance().getString(Config.ACC_JID));
     }
 
     public void onShutDown() {
-        mContactList.onShutDown();
+        DATABASE.execTransaction(() -> mContactList.onShutDown());
+        FLUSHER.shutDown();
     }
 }
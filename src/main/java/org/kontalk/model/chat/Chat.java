@@ -23,12 +23,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.lang.ObjectUtils;
@@ -37,6 +39,7 @@ import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 import org.kontalk.misc.Searchable;
 import org.kontalk.model.Contact;
+import org.kontalk.model.FlushScheduler;
 import org.kontalk.model.Model;
 import org.kontalk.model.message.KonMessage;
 import org.kontalk.persistence.Database;
@@ -48,7 +51,8 @@ import org.kontalk.persistence.Database;
  *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
-public abstract class Chat extends Observable implements Observer, Searchable {
+public abstract class Chat extends Observable
+        implements Observer, Searchable, FlushScheduler.Flushable {
     private static final Logger LOGGER = Logger.getLogger(Chat.class.getName());
 
     public enum ViewChange {
@@ -60,6 +64,7 @@ public abstract class Chat extends Observable implements Observer, Searchable {
     public static final String COL_GD = "gid";
     public static final String COL_SUBJ = "subject";
     public static final String COL_READ = "read";
+    public static final String COL_UNREAD = "unread";
     public static final String COL_VIEW_SET = "view_settings";
     public static final String SCHEMA = "( " +
             Database.SQL_ID +
@@ -72,29 +77,35 @@ public abstract class Chat extends Observable implements Observer, Searchable {
             // view settings in JSON format
             COL_VIEW_SET+" TEXT NOT NULL, " +
             // optional group id in JSON format
-            COL_GD+" TEXT " +
+            COL_GD+" TEXT, " +
+            // number of unread messages
+            COL_UNREAD+" INTEGER NOT NULL DEFAULT 0" +
             ")";
 
     protected final int mID;
     private final ChatMessages mMessages;
 
-    private boolean mRead;
+    private int mUnread; // guarded by this
     private boolean mDeleted = false;
 
     private ViewSettings mViewSettings;
 
+    /** Columns changed but not yet written. */
+    private final Set<String> mDirty = new HashSet<>(); // guarded by this
+
     protected Chat(String xmppID, String subject, GroupMetaData gData) {
         mMessages = new ChatMessages();
-        mRead = true;
+        mUnread = 0;
         mViewSettings = new ViewSettings();
 
         // insert
         List<Object> values = Arrays.asList(
                 Database.setString(xmppID),
                 Database.setString(subject),
-                mRead,
+                true,
                 mViewSettings.toJSONString(),
-                Database.setString(gData == null ? "" : gData.toJSON()));
+                Database.setString(gData == null ? "" : gData.toJSON()),
+                mUnread);
         mID = Model.database().execInsert(TABLE, values);
         if (mID < 1) {
             LOGGER.warning("could not insert chat");
@@ -102,10 +113,10 @@ public abstract class Chat extends Observable implements Observer, Searchable {
     }
 
     // used when loading from database
-    protected Chat(int id, boolean read, String jsonViewSettings) {
+    protected Chat(int id, int unread, String jsonViewSettings) {
         mID = id;
         mMessages = new ChatMessages();
-        mRead = read;
+        mUnread = unread;
         mViewSettings = new ViewSettings(this, jsonViewSettings);
     }
 
@@ -122,9 +133,11 @@ public abstract class Chat extends Observable implements Observer, Searchable {
 
         boolean added = mMessages.add(message);
         if (added) {
-            if (message.isInMessage() && mRead) {
-                mRead = false;
-                this.save();
+            if (message.isInMessage()) {
+                synchronized (this) {
+                    mUnread++;
+                }
+                this.save(COL_READ, COL_UNREAD);
                 this.changed(ViewChange.READ);
             }
             this.changed(ViewChange.NEW_MESSAGE);
@@ -136,16 +149,23 @@ public abstract class Chat extends Observable implements Observer, Searchable {
         return mID;
     }
 
-    public boolean isRead() {
-        return mRead;
+    public synchronized boolean isRead() {
+        return mUnread == 0;
+    }
+
+    /** Number of incoming messages added since chat was read. */
+    public synchronized int getUnreadCount() {
+        return mUnread;
     }
 
     public void setRead() {
-        if (mRead)
-            return;
+        synchronized (this) {
+            if (mUnread == 0)
+                return;
 
-        mRead = true;
-        this.save();
+            mUnread = 0;
+        }
+        this.save(COL_READ, COL_UNREAD);
         this.changed(ViewChange.READ);
     }
 
@@ -158,7 +178,7 @@ public abstract class Chat extends Observable implements Observer, Searchable {
             return;
 
         mViewSettings = settings;
-        this.save();
+        this.save(COL_VIEW_SET);
         this.changed(ViewChange.VIEW_SETTINGS);
     }
 
@@ -199,17 +219,39 @@ public abstract class Chat extends Observable implements Observer, Searchable {
 
     public abstract void setChatState(Contact contact, ChatState chatState);
 
-    abstract void save();
+    /** Schedule writing of changed columns. Not saving members here. */
+    protected void save(String... columns) {
+        synchronized (this) {
+            mDirty.addAll(Arrays.asList(columns));
+        }
+        Model.flusher().schedule(this);
+    }
 
-    // not saving members here
-    protected void save(String subject) {
+    @Override
+    public Optional<Runnable> takeChanges() {
         Map<String, Object> set = new HashMap<>();
-        set.put(COL_SUBJ, Database.setString(subject));
-        set.put(COL_READ, mRead);
-        set.put(COL_VIEW_SET, mViewSettings.toJSONString());
+        synchronized (this) {
+            if (!mDeleted) {
+                for (String column : mDirty)
+                    set.put(column, this.columnValue(column));
+            }
+            mDirty.clear();
+        }
+        if (set.isEmpty())
+            return Optional.empty();
 
-        Database db = Model.database();
-        db.execUpdate(TABLE, set, mID);
+        return Optional.of(() -> Model.database().execUpdate(TABLE, set, mID));
+    }
+
+    private Object columnValue(String column) {
+        switch (column) {
+            case COL_SUBJ: return Database.setString(this.getSubject());
+            case COL_READ: return mUnread == 0;
+            case COL_UNREAD: return mUnread;
+            case COL_VIEW_SET: return mViewSettings.toJSONString();
+            default:
+                throw new IllegalArgumentException("unknown column: "+column);
+        }
     }
 
     void delete() {
@@ -274,20 +316,20 @@ public abstract class Chat extends Observable implements Observer, Searchable {
 
         String subject = Database.getString(rs, Chat.COL_SUBJ);
 
-        boolean read = rs.getBoolean(Chat.COL_READ);
+        int unread = rs.getInt(Chat.COL_UNREAD);
 
         String jsonViewSettings = Database.getString(rs,
                 Chat.COL_VIEW_SET);
 
         Chat chat;
         if (gData != null) {
-            chat = GroupChat.create(id, members, gData, subject, read, jsonViewSettings);
+            chat = GroupChat.create(id, members, gData, subject, unread, jsonViewSettings);
         } else {
             if (members.size() != 1) {
                 LOGGER.warning("not one contact for single chat, id="+id);
                 return Optional.empty();
             }
-            chat = new SingleChat(id, members.get(0), xmppID, read, jsonViewSettings);
+            chat = new SingleChat(id, members.get(0), xmppID, unread, jsonViewSettings);
         }
 
         chat.loadMessages(db, contactMap);
@@ -26,9 +26,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.Objects;
 import java.util.Observer;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.kontalk.model.Contact;
@@ -47,8 +49,13 @@ public final class ChatList extends Observable implements Observer, Iterable<Cha
     }
 
     private final Set<Chat> mChats = Collections.synchronizedSet(new HashSet<Chat>());
+    // indexes for finding chats of incoming stanzas, updated together with
+    // chat set
+    private final Map<SingleKey, SingleChat> mSingleIndex = new ConcurrentHashMap<>();
+    private final Map<GroupMetaData, GroupChat> mGroupIndex = new ConcurrentHashMap<>();
 
-    private boolean mUnread = false;
+    // chats with unread messages, count is its size
+    private final Set<Chat> mUnreadChats = ConcurrentHashMap.newKeySet();
 
     public void load(Map<Integer, Contact> contactMap) {
         assert mChats.isEmpty();
@@ -61,7 +68,8 @@ public final class ChatList extends Observable implements Observer, Iterable<Cha
                     continue;
                 this.putSilent(chat);
 
-                mUnread |= !chat.isRead();
+                if (!chat.isRead())
+                    mUnreadChats.add(chat);
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.WARNING, "can't load chats from db", ex);
@@ -75,24 +83,11 @@ public final class ChatList extends Observable implements Observer, Iterable<Cha
 
     /** Get single chat with contact and XMPPID. */
     public Optional<SingleChat> get(Contact contact, String xmmpThreadID) {
-        synchronized(mChats) {
-            return mChats.stream()
-                    .filter(chat -> chat instanceof SingleChat)
-                    .map(chat -> (SingleChat) chat)
-                    .filter(chat -> chat.getXMPPID().equals(xmmpThreadID)
-                            && chat.getMember().getContact().equals(contact))
-                    .findFirst();
-        }
+        return Optional.ofNullable(mSingleIndex.get(new SingleKey(contact, xmmpThreadID)));
     }
 
     public Optional<GroupChat> get(GroupMetaData gData) {
-        synchronized(mChats) {
-            return mChats.stream()
-                    .filter(chat -> chat instanceof GroupChat)
-                    .map(chat -> (GroupChat) chat)
-                    .filter(chat -> chat.getGroupData().equals(gData))
-                    .findFirst();
-        }
+        return Optional.ofNullable(mGroupIndex.get(gData));
     }
 
     public SingleChat getOrCreate(Contact contact) {
@@ -129,10 +124,19 @@ public final class ChatList extends Observable implements Observer, Iterable<Cha
     }
 
     private void putSilent(Chat chat) {
-        boolean succ = mChats.add(chat);
-        if (!succ) {
-            LOGGER.warning("chat already in chat list: "+chat);
-            return;
+        synchronized(mChats) {
+            boolean succ = mChats.add(chat);
+            if (!succ) {
+                LOGGER.warning("chat already in chat list: "+chat);
+                return;
+            }
+            if (chat instanceof SingleChat) {
+                SingleChat singleChat = (SingleChat) chat;
+                mSingleIndex.put(SingleKey.of(singleChat), singleChat);
+            } else if (chat instanceof GroupChat) {
+                GroupChat groupChat = (GroupChat) chat;
+                mGroupIndex.put(groupChat.getGroupData(), groupChat);
+            }
         }
         chat.addObserver(this);
     }
@@ -146,19 +150,32 @@ public final class ChatList extends Observable implements Observer, Iterable<Cha
     }
 
     public void delete(Chat chat) {
-        boolean succ = mChats.remove(chat);
-        if (!succ) {
-            LOGGER.warning("can't delete chat, not found: "+chat);
-            return;
+        synchronized(mChats) {
+            boolean succ = mChats.remove(chat);
+            if (!succ) {
+                LOGGER.warning("can't delete chat, not found: "+chat);
+                return;
+            }
+            if (chat instanceof SingleChat)
+                mSingleIndex.remove(SingleKey.of((SingleChat) chat), chat);
+            else if (chat instanceof GroupChat)
+                mGroupIndex.remove(((GroupChat) chat).getGroupData(), chat);
         }
         chat.delete();
         chat.deleteObservers();
         this.changed(ViewChange.MODIFIED);
+        if (mUnreadChats.remove(chat))
+            this.changed(ViewChange.UNREAD);
     }
 
     /** Return if any chat is unread. */
     public boolean isUnread() {
-        return mUnread;
+        return !mUnreadChats.isEmpty();
+    }
+
+    /** Return number of chats with unread messages. */
+    public int getUnreadCount() {
+        return mUnreadChats.size();
     }
 
     private void changed(ViewChange change) {
@@ -171,24 +188,53 @@ public final class ChatList extends Observable implements Observer, Iterable<Cha
         if (arg != Chat.ViewChange.READ || !(o instanceof Chat))
             return;
 
-        boolean unread = !((Chat) o).isRead();
-        if (mUnread == unread)
+        Chat chat = (Chat) o;
+        if (!mChats.contains(chat))
             return;
 
-        if (!unread) {
-            // one chat was read, are there still any unread chats?
-            synchronized(mChats) {
-                if (mChats.stream().anyMatch(chat -> !chat.isRead()))
-                    return;
-            }
-        }
-
-        mUnread = !mUnread;
-        this.changed(ViewChange.UNREAD);
+        boolean changed = chat.isRead() ?
+                mUnreadChats.remove(chat) :
+                mUnreadChats.add(chat);
+        if (changed)
+            this.changed(ViewChange.UNREAD);
     }
 
     @Override
     public Iterator<Chat> iterator() {
         return mChats.iterator();
     }
+
+    private static final class SingleKey {
+        private final Contact mContact;
+        private final String mXMPPID;
+
+        private SingleKey(Contact contact, String xmppID) {
+            mContact = contact;
+            mXMPPID = xmppID;
+        }
+
+        private static SingleKey of(SingleChat chat) {
+            return new SingleKey(chat.getMember().getContact(), chat.getXMPPID());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+
+            if (!(o instanceof SingleKey))
+                return false;
+
+            SingleKey oKey = (SingleKey) o;
+            return mContact.equals(oKey.mContact) && mXMPPID.equals(oKey.mXMPPID);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 59 * hash + Objects.hashCode(mContact);
+            hash = 59 * hash + Objects.hashCode(mXMPPID);
+            return hash;
+        }
+    }
 }
@@ -19,9 +19,12 @@
 package org.kontalk.model.chat;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Observable;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.jivesoftware.smackx.chatstates.ChatState;
@@ -39,7 +42,8 @@ import org.kontalk.persistence.Database;
 public abstract class GroupChat<D extends GroupMetaData> extends Chat {
     private static final Logger LOGGER = Logger.getLogger(GroupChat.class.getName());
 
-    private final HashSet<Member> mMemberSet = new HashSet<>();
+    /** Current members, replaced on every change (copy-on-write). */
+    private volatile Members mMembers = new Members(Collections.emptyList());
     private final D mGroupData;
 
     /** Chat subject/title set by user. Empty string only if unknown/not set. */
@@ -62,60 +66,78 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
             List<Member> members,
             D gData,
             String subject,
-            boolean read,
+            int unread,
             String jsonViewSettings
             ) {
-        super(id, read, jsonViewSettings);
+        super(id, unread, jsonViewSettings);
 
         mGroupData = gData;
         mSubject = subject;
 
-        members.stream().forEach(m -> this.addMemberSilent(m));
+        this.addMembersLoaded(members);
     }
 
+    /** Returned list is unmodifiable. */
     @Override
     public List<Member> getAllMembers() {
-        return new ArrayList<>(mMemberSet);
+        return mMembers.mAll;
     }
 
-    /** Get all contacts (including deleted and user contact). */
+    /** Get all contacts (including deleted and user contact). Returned list is unmodifiable. */
     @Override
     public List<Contact> getAllContacts() {
-        return mMemberSet.stream()
-                .map(m -> m.getContact())
-                .collect(Collectors.toList());
+        return mMembers.mContacts;
     }
 
+    /** Returned list is unmodifiable. */
     @Override
     public List<Contact> getValidContacts() {
-        return mMemberSet.stream()
-                .map(m -> m.getContact())
-                .filter(c -> (!c.isDeleted() && !c.isMe()))
-                .collect(Collectors.toList());
+        return mMembers.mValidContacts;
     }
 
     private void addMembersSilent(List<ProtoMember> members) {
-        members.stream()
-        .filter(m -> {
-            if (mMemberSet.contains(m)) {
-                LOGGER.warning("(proto)member already in chat: " + m);
-                return false;
-            } else {
-                return true;
+        // inserting without chat lock, flusher holds database lock first
+        List<Member> current = mMembers.mAll;
+        List<Member> created = members.stream()
+                .filter(m -> {
+                    if (current.contains(m)) {
+                        LOGGER.warning("(proto)member already in chat: " + m);
+                        return false;
+                    } else {
+                        return true;
+                    }
+                })
+                .map(m -> new Member(m, mID))
+                .collect(Collectors.toList());
+        if (created.isEmpty())
+            return;
+
+        synchronized (this) {
+            List<Member> newMembers = new ArrayList<>(mMembers.mAll);
+            for (Member member : created) {
+                if (newMembers.contains(member)) {
+                    // added concurrently, insert failed on unique constraint
+                    LOGGER.warning("member already in chat: " + member);
+                    continue;
+                }
+                member.getContact().addObserver(this);
+                newMembers.add(member);
             }
-        })
-        .map(m -> new Member(m, mID))
-        .forEach(m -> this.addMemberSilent(m));
+            mMembers = new Members(newMembers);
+        }
     }
 
-    private void addMemberSilent(Member member) {
-        if (mMemberSet.contains(member)) {
-            LOGGER.warning("member already in chat: "+member);
-            return;
+    private synchronized void addMembersLoaded(List<Member> members) {
+        List<Member> newMembers = new ArrayList<>(mMembers.mAll);
+        for (Member member : members) {
+            if (newMembers.contains(member)) {
+                LOGGER.warning("member already in chat: "+member);
+                continue;
+            }
+            member.getContact().addObserver(this);
+            newMembers.add(member);
         }
-
-        member.getContact().addObserver(this);
-        mMemberSet.add(member);
+        mMembers = new Members(newMembers);
     }
 
     public D getGroupData() {
@@ -129,10 +151,7 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
 
     @Override
     public void setChatState(final Contact contact, ChatState chatState) {
-        Member member = mMemberSet.stream()
-                .filter(m -> m.getContact().equals(contact))
-                .findFirst().orElse(null);
-
+        Member member = mMembers.mByContact.get(contact);
         if (member == null) {
             LOGGER.warning("can't find member in member set!?");
             return;
@@ -148,29 +167,32 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
             String subject) {
         this.addMembersSilent(added);
 
-        Database db = Model.database();
-        for (ProtoMember pm : removed) {
-            Member member = mMemberSet.stream()
-                    .filter(m -> pm.equals(m))
-                    .findFirst().orElse(null);
-            if (member == null) {
-                LOGGER.warning("(proto)member not in chat: "+pm);
-                continue;
-            }
-            member.getContact().deleteObservers();
-            boolean succ = mMemberSet.remove(member);
-            if (!succ) {
-                LOGGER.warning("member not in chat: "+member);
+        List<Member> removedMembers = new ArrayList<>(removed.size());
+        synchronized (this) {
+            Map<Contact, Member> newMembers = new LinkedHashMap<>(mMembers.mByContact);
+            for (ProtoMember pm : removed) {
+                Member member = newMembers.remove(pm.getContact());
+                if (member == null) {
+                    LOGGER.warning("(proto)member not in chat: "+pm);
+                    continue;
+                }
+                member.getContact().deleteObservers();
+                removedMembers.add(member);
             }
-            member.delete(db);
+            if (!removedMembers.isEmpty())
+                mMembers = new Members(newMembers.values());
         }
-        if (!removed.isEmpty()) {
+
+        if (!removedMembers.isEmpty()) {
+            // deleting without chat lock, flusher holds database lock first
+            Database db = Model.database();
+            removedMembers.forEach(m -> m.delete(db));
             db.commit();
         }
 
         if (!subject.isEmpty() && !subject.equals(mSubject)) {
             mSubject = subject;
-            this.save();
+            this.save(COL_SUBJ);
         }
 
         if (!added.isEmpty() || !removed.isEmpty()) {
@@ -193,9 +215,7 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
 
     @Override
     public boolean canSendEncrypted() {
-        List<Contact> contacts = this.getValidContacts();
-        return !contacts.isEmpty() &&
-                contacts.stream().allMatch(c -> c.hasKey());
+        return mMembers.mAllValidHaveKey;
     }
 
     @Override
@@ -205,9 +225,7 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
 
     @Override
     public boolean isAdministratable() {
-        Member me = mMemberSet.stream()
-                .filter(m -> m.getContact().isMe())
-                .findFirst().orElse(null);
+        Member me = mMembers.mMe;
         if (me == null)
             return false;
         Member.Role myRole = me.getRole();
@@ -215,12 +233,20 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
     }
 
     public boolean containsMe() {
-        return mMemberSet.stream().anyMatch(m -> m.getContact().isMe());
+        return mMembers.mMe != null;
     }
 
     @Override
-    void save() {
-        this.save(mSubject);
+    public void update(Observable o, Object arg) {
+        if (arg == Contact.ViewChange.JID ||
+                arg == Contact.ViewChange.KEY ||
+                arg == Contact.ViewChange.DELETED) {
+            // derived views depend on contact state
+            synchronized (this) {
+                mMembers = new Members(mMembers.mAll);
+            }
+        }
+        super.update(o, arg);
     }
 
     @Override
@@ -245,14 +271,40 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
         return "GC:id="+mID+",gd="+mGroupData+",subject="+mSubject;
     }
 
+    /** Immutable snapshot of all members with precomputed views. */
+    private static final class Members {
+        final List<Member> mAll;
+        final Map<Contact, Member> mByContact;
+        final List<Contact> mContacts;
+        final List<Contact> mValidContacts;
+        final boolean mAllValidHaveKey;
+        final Member mMe;
+
+        Members(Iterable<Member> members) {
+            Map<Contact, Member> byContact = new LinkedHashMap<>();
+            members.forEach(m -> byContact.put(m.getContact(), m));
+            mByContact = Collections.unmodifiableMap(byContact);
+            mAll = Collections.unmodifiableList(new ArrayList<>(byContact.values()));
+            mContacts = Collections.unmodifiableList(new ArrayList<>(byContact.keySet()));
+            mValidContacts = Collections.unmodifiableList(mContacts.stream()
+                    .filter(c -> (!c.isDeleted() && !c.isMe()))
+                    .collect(Collectors.toList()));
+            mAllValidHaveKey = !mValidContacts.isEmpty() &&
+                    mValidContacts.stream().allMatch(c -> c.hasKey());
+            mMe = mAll.stream()
+                    .filter(m -> m.getContact().isMe())
+                    .findFirst().orElse(null);
+        }
+    }
+
     public static final class KonGroupChat extends GroupChat<KonGroupData> {
         private KonGroupChat(List<ProtoMember> members, KonGroupData gData, String subject) {
             super(members, gData, subject);
         }
 
         private KonGroupChat(int id, List<Member> members,
-                KonGroupData gData, String subject, boolean read, String jsonViewSettings) {
-            super(id, members, gData, subject, read, jsonViewSettings);
+                KonGroupData gData, String subject, int unread, String jsonViewSettings) {
+            super(id, members, gData, subject, unread, jsonViewSettings);
         }
     }
 
@@ -262,16 +314,16 @@ public abstract class GroupChat<D extends GroupMetaData> extends Chat {
         }
 
         private MUCChat(int id, List<Member> members, MUCData gData,
-                String subject, boolean read, String jsonViewSettings) {
-            super(id, members, gData, subject, read, jsonViewSettings);
+                String subject, int unread, String jsonViewSettings) {
+            super(id, members, gData, subject, unread, jsonViewSettings);
         }
     }
 
     static GroupChat create(int id, List<Member> members,
-            GroupMetaData gData, String subject, boolean read, String jsonViewSettings) {
+            GroupMetaData gData, String subject, int unread, String jsonViewSettings) {
         return (gData instanceof KonGroupData) ?
-                new KonGroupChat(id, members, (KonGroupData) gData, subject, read, jsonViewSettings) :
-                new MUCChat(id, members, (MUCData) gData, subject, read, jsonViewSettings);
+                new KonGroupChat(id, members, (KonGroupData) gData, subject, unread, jsonViewSettings) :
+                new MUCChat(id, members, (MUCData) gData, subject, unread, jsonViewSettings);
     }
 
     static GroupChat create(Database db, List<ProtoMember> members, GroupMetaData gData, String subject) {
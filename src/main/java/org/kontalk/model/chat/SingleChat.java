@@ -52,9 +52,9 @@ public final class SingleChat extends Chat {
             int id,
             Member member,
             String xmppID,
-            boolean read,
+            int unread,
             String jsonViewSettings) {
-        super(id, read, jsonViewSettings);
+        super(id, unread, jsonViewSettings);
 
         mMember = member;
         mXMPPID = xmppID;
@@ -126,11 +126,6 @@ public final class SingleChat extends Chat {
         this.changed(ViewChange.MEMBER_STATE);
     }
 
-    @Override
-    void save() {
-        super.save("");
-    }
-
     @Override
     public final boolean equals(Object o) {
         if (this == o) return true;
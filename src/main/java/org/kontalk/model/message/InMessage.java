@@ -76,14 +76,14 @@ public final class InMessage extends KonMessage implements DecryptMessage {
     @Override
     public void setSigning(Coder.Signing signing) {
         mCoderStatus.setSigning(signing);
-        this.save();
+        this.save(COL_SIGN_STAT);
     }
 
     @Override
     public void setDecryptedContent(MessageContent decryptedContent) {
         mContent.setDecryptedContent(decryptedContent);
         mCoderStatus.setDecrypted();
-        this.save();
+        this.save(COL_CONTENT, COL_ENCR_STAT);
         this.changed(ViewChange.CONTENT);
     }
 
@@ -93,7 +93,7 @@ public final class InMessage extends KonMessage implements DecryptMessage {
             return;
 
         attachment.setFile(fileName);
-        this.save();
+        this.save(COL_CONTENT);
         // only tell view if file not encrypted
         if (!attachment.getCoderStatus().isEncrypted())
             this.changed(ViewChange.ATTACHMENT);
@@ -105,7 +105,7 @@ public final class InMessage extends KonMessage implements DecryptMessage {
             return;
 
         attachment.getCoderStatus().setSigning(signing);
-        this.save();
+        this.save(COL_CONTENT);
     }
 
     public void setAttachmentDownloadProgress(int p) {
@@ -124,7 +124,7 @@ public final class InMessage extends KonMessage implements DecryptMessage {
             return;
 
         attachment.setDecryptedFile(filename);
-        this.save();
+        this.save(COL_CONTENT);
         this.changed(ViewChange.ATTACHMENT);
     }
 
@@ -135,7 +135,7 @@ public final class InMessage extends KonMessage implements DecryptMessage {
             return;
         }
         preview.setFilename(filename);
-        this.save();
+        this.save(COL_CONTENT);
         this.changed(ViewChange.ATTACHMENT);
     }
 
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -39,6 +40,7 @@ import org.kontalk.persistence.Database;
 import org.kontalk.crypto.Coder;
 import org.kontalk.misc.Searchable;
 import org.kontalk.model.Contact;
+import org.kontalk.model.FlushScheduler;
 import org.kontalk.model.Model;
 import org.kontalk.model.message.MessageContent.Preview;
 import org.kontalk.util.EncodingUtils;
@@ -48,7 +50,8 @@ import org.kontalk.util.EncodingUtils;
  *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
-public abstract class KonMessage extends Observable implements Searchable {
+public abstract class KonMessage extends Observable
+        implements Searchable, FlushScheduler.Flushable {
     private static final Logger LOGGER = Logger.getLogger(KonMessage.class.getName());
 
     /**
@@ -126,6 +129,10 @@ public abstract class KonMessage extends Observable implements Searchable {
     protected CoderStatus mCoderStatus;
     protected ServerError mServerError;
 
+    /** Columns changed but not yet written. */
+    private final Set<String> mDirty = new HashSet<>(); // guarded by this
+    private boolean mDeleted = false; // guarded by this
+
     protected KonMessage(
             Chat chat,
             String xmppID,
@@ -218,7 +225,7 @@ public abstract class KonMessage extends Observable implements Searchable {
             return;
 
         attachment.getCoderStatus().setSecurityErrors(errors);
-        this.save();
+        this.save(COL_CONTENT);
     }
 
     protected MessageContent.Attachment getAttachment() {
@@ -236,7 +243,7 @@ public abstract class KonMessage extends Observable implements Searchable {
 
     public void setSecurityErrors(EnumSet<Coder.Error> errors) {
         mCoderStatus.setSecurityErrors(errors);
-        this.save();
+        this.save(COL_COD_ERR);
         this.changed(ViewChange.STATUS);
     }
 
@@ -246,7 +253,7 @@ public abstract class KonMessage extends Observable implements Searchable {
 
     public void setPreview(Preview preview) {
         mContent.setPreview(preview);
-        this.save();
+        this.save(COL_CONTENT);
         this.changed(ViewChange.ATTACHMENT);
     }
 
@@ -254,16 +261,42 @@ public abstract class KonMessage extends Observable implements Searchable {
         return mCoderStatus.isEncrypted();
     }
 
-    protected void save() {
+    /** Schedule writing of changed columns. */
+    protected void save(String... columns) {
+        synchronized (this) {
+            mDirty.addAll(Arrays.asList(columns));
+        }
+        Model.flusher().schedule(this);
+    }
+
+    @Override
+    public Optional<Runnable> takeChanges() {
         Map<String, Object> set = new HashMap<>();
-        set.put(COL_STATUS, mStatus);
-        set.put(COL_CONTENT, mContent.toJSON());
-        set.put(COL_ENCR_STAT, mCoderStatus.getEncryption());
-        set.put(COL_SIGN_STAT, mCoderStatus.getSigning());
-        set.put(COL_COD_ERR, mCoderStatus.getErrors());
-        set.put(COL_SERV_ERR, Database.setString(mServerError.toJSON()));
-        set.put(COL_SERV_DATE, mServerDate);
-        Model.database().execUpdate(TABLE, set, mID);
+        synchronized (this) {
+            if (!mDeleted) {
+                for (String column : mDirty)
+                    set.put(column, this.columnValue(column));
+            }
+            mDirty.clear();
+        }
+        if (set.isEmpty())
+            return Optional.empty();
+
+        return Optional.of(() -> Model.database().execUpdate(TABLE, set, mID));
+    }
+
+    private Object columnValue(String column) {
+        switch (column) {
+            case COL_STATUS: return mStatus;
+            case COL_CONTENT: return mContent.toJSON();
+            case COL_ENCR_STAT: return mCoderStatus.getEncryption();
+            case COL_SIGN_STAT: return mCoderStatus.getSigning();
+            case COL_COD_ERR: return mCoderStatus.getErrors();
+            case COL_SERV_ERR: return Database.setString(mServerError.toJSON());
+            case COL_SERV_DATE: return mServerDate;
+            default:
+                throw new IllegalArgumentException("unknown column: "+column);
+        }
     }
 
     public boolean delete() {
@@ -275,6 +308,10 @@ public abstract class KonMessage extends Observable implements Searchable {
             LOGGER.warning("not in database: "+this);
             return true;
         }
+
+        synchronized (this) {
+            mDeleted = true;
+        }
         return Model.database().execDelete(TABLE, mID);
     }
 
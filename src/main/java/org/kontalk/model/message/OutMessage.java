@@ -98,7 +98,7 @@ public final class OutMessage extends KonMessage {
         mStatus = status;
         if (status != Status.PENDING)
             mServerDate = new Date();
-        this.save();
+        this.save(COL_STATUS, COL_SERV_DATE);
         this.changed(ViewChange.STATUS);
     }
 
@@ -107,6 +107,7 @@ public final class OutMessage extends KonMessage {
         if (mStatus != Status.SENT)
             LOGGER.warning("unexpected status of message with error: "+mStatus);
         mServerError = new KonMessage.ServerError(condition, text);
+        this.save(COL_SERV_ERR);
         this.setStatus(Status.ERROR);
     }
 
@@ -117,7 +118,7 @@ public final class OutMessage extends KonMessage {
             return;
 
         attachment.updateUploaded(url, mime, length);
-        this.save();
+        this.save(COL_CONTENT);
     }
 
     public boolean isSendEncrypted() {
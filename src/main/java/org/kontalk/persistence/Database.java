@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang.StringUtils;
 import org.kontalk.misc.JID;
 import org.kontalk.misc.KonException;
+import org.kontalk.misc.StartupProfiler;
 import org.kontalk.model.message.KonMessage;
 import org.kontalk.model.chat.Chat;
 import org.kontalk.model.Contact;
@@ -62,12 +63,13 @@ public final class Database {
     public static final String SQL_ID = "_id INTEGER PRIMARY KEY AUTOINCREMENT, ";
 
     private static final String FILENAME = "kontalk_db.sqlite";
-    private static final int DB_VERSION = 5;
+    private static final int DB_VERSION = 8;
     private static final String SQL_CREATE = "CREATE TABLE IF NOT EXISTS ";
     private static final String SV = "schema_version";
     private static final String UV = "user_version";
 
     private Connection mConn = null;
+    private boolean mInTransaction = false;
 
     public Database(Path appDir) throws KonException {
         // load the sqlite-JDBC driver using the current class loader
@@ -117,6 +119,8 @@ public final class Database {
                 this.createTable(stat, Member.TABLE, Member.SCHEMA);
                 this.createTable(stat, KonMessage.TABLE, KonMessage.SCHEMA);
                 this.createTable(stat, Transmission.TABLE, Transmission.SCHEMA);
+                this.createTable(stat, RosterTables.TABLE, RosterTables.SCHEMA);
+                this.createTable(stat, RosterTables.VERSION_TABLE, RosterTables.VERSION_SCHEMA);
             } catch (SQLException ex) {
                 LOGGER.log(Level.SEVERE, "can't create tables", ex);
                 throw new KonException(KonException.Error.DB, ex);
@@ -184,6 +188,22 @@ public final class Database {
             mConn.createStatement().execute("ALTER TABLE "+Member.TABLE+
                     " ADD COLUMN "+Member.COL_ROLE+" DEFAULT 0");
         }
+        if (fromVersion < 6) {
+            this.createTable(mConn.createStatement(), RosterTables.TABLE, RosterTables.SCHEMA);
+        }
+        if (fromVersion < 7) {
+            mConn.createStatement().execute("ALTER TABLE "+Chat.TABLE+
+                    " ADD COLUMN "+Chat.COL_UNREAD+" INTEGER NOT NULL DEFAULT 0");
+            // real number is unknown
+            mConn.createStatement().execute("UPDATE "+Chat.TABLE+
+                    " SET "+Chat.COL_UNREAD+" = 1 WHERE "+Chat.COL_READ+" = 0");
+        }
+        if (fromVersion < 8) {
+            // version was saved in config before, snapshot is replaced on
+            // next login
+            this.createTable(mConn.createStatement(), RosterTables.VERSION_TABLE,
+                    RosterTables.VERSION_SCHEMA);
+        }
 
         // set new version
         mConn.createStatement().execute("PRAGMA "+UV+" = "+DB_VERSION);
@@ -221,6 +241,7 @@ public final class Database {
     }
 
     private ResultSet execQuery(String select) throws SQLException {
+        StartupProfiler.onQuery();
         try {
             PreparedStatement stat = mConn.prepareStatement(select);
             // does not work, i dont care
@@ -252,8 +273,9 @@ public final class Database {
         try (PreparedStatement stat = mConn.prepareStatement(insert,
                 Statement.RETURN_GENERATED_KEYS)) {
             insertValues(stat, values);
+            StartupProfiler.onQuery();
             stat.executeUpdate();
-            mConn.commit();
+            this.mayCommit();
             ResultSet keys = stat.getGeneratedKeys();
             return keys.getInt(1);
         } catch (SQLException ex) {
@@ -282,8 +304,9 @@ public final class Database {
 
         try (PreparedStatement stat = mConn.prepareStatement(update, Statement.RETURN_GENERATED_KEYS)) {
             insertValues(stat, keyList, set);
+            StartupProfiler.onQuery();
             stat.executeUpdate();
-            mConn.commit();
+            this.mayCommit();
             ResultSet keys = stat.getGeneratedKeys();
             return keys.getInt(1);
         } catch (SQLException ex) {
@@ -293,8 +316,9 @@ public final class Database {
     }
 
     /** Delete one row. Not commited! Call commit() after deletions. */
-    public boolean execDelete(String table, int id) {
+    public synchronized boolean execDelete(String table, int id) {
         LOGGER.info("deletion, table: " + table + "; id: " + id);
+        StartupProfiler.onQuery();
         try (Statement stat = mConn.createStatement()) {
             stat.executeUpdate("DELETE FROM " + table + " WHERE _id = " + id);
         } catch (SQLException ex) {
@@ -304,7 +328,40 @@ public final class Database {
         return true;
     }
 
-    public boolean commit() {
+    /**
+     * Run all inserts, updates and deletions of the given changes in one
+     * transaction. Other writing threads are blocked until the transaction is
+     * committed, the changes should only write and not wait for other threads.
+     * If the changes throw, all their writes are rolled back (objects in
+     * memory are not).
+     *
+     * @return false if changes failed or could not be committed
+     */
+    public synchronized boolean execTransaction(Runnable changes) {
+        if (mInTransaction) {
+            // nested, outer transaction commits
+            changes.run();
+            return true;
+        }
+
+        mInTransaction = true;
+        try {
+            changes.run();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "transaction failed, rolling back", ex);
+            this.rollback();
+            return false;
+        } finally {
+            mInTransaction = false;
+        }
+        return this.commit();
+    }
+
+    /** Commit all changes. Within a transaction the transaction commits. */
+    public synchronized boolean commit() {
+        if (mInTransaction)
+            return true;
+
         try {
             mConn.commit();
         } catch (SQLException ex) {
@@ -314,6 +371,19 @@ public final class Database {
         return true;
     }
 
+    private void rollback() {
+        try {
+            mConn.rollback();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "can't rollback", ex);
+        }
+    }
+
+    private void mayCommit() throws SQLException {
+        if (!mInTransaction)
+            mConn.commit();
+    }
+
     private static void insertValues(PreparedStatement stat,
             List<String> keys,
             Map<String, Object> map) throws SQLException {
@@ -0,0 +1,53 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.persistence;
+
+/**
+ * Database tables for the persistent roster snapshot (XEP-0237 roster
+ * versioning).
+ */
+public final class RosterTables {
+
+    public static final String TABLE = "roster";
+    public static final String COL_JID = "jid";
+    public static final String COL_NAME = "name";
+    public static final String COL_TYPE = "type";
+    public static final String COL_STATUS = "status";
+    public static final String COL_GROUPS = "groups";
+    public static final String SCHEMA = "(" +
+            Database.SQL_ID +
+            COL_JID + " TEXT NOT NULL UNIQUE, " +
+            COL_NAME + " TEXT, " +
+            COL_TYPE + " TEXT NOT NULL, " +
+            COL_STATUS + " TEXT, " +
+            // tab separated
+            COL_GROUPS + " TEXT NOT NULL" +
+            ")";
+
+    /** Version of the snapshot, at most one row. */
+    public static final String VERSION_TABLE = "roster_version";
+    public static final String COL_VERSION = "version";
+    public static final String VERSION_SCHEMA = "(" +
+            Database.SQL_ID +
+            COL_VERSION + " TEXT NOT NULL" +
+            ")";
+
+    private RosterTables() {
+        throw new AssertionError();
+    }
+}
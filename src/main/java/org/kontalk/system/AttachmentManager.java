@@ -19,7 +19,6 @@
 package org.kontalk.system;
 
 import java.awt.Dimension;
-import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -327,13 +326,14 @@ public class AttachmentManager implements Runnable {
         if (!isImage(mime))
             return false;
 
-        BufferedImage image = MediaUtils.readImage(path);
-        if (image.getWidth() <= THUMBNAIL_DIM.width
-                && image.getHeight() <= THUMBNAIL_DIM.height)
+        Dimension size = MediaUtils.readImageSize(path.toFile()).orElse(null);
+        if (size == null ||
+                size.width <= THUMBNAIL_DIM.width
+                && size.height <= THUMBNAIL_DIM.height)
             return false;
 
-        Image thumb = MediaUtils.scaleAsync(image,
-                THUMBNAIL_DIM.width ,
+        BufferedImage thumb = MediaUtils.readThumbnail(path,
+                THUMBNAIL_DIM.width,
                 THUMBNAIL_DIM.height);
 
         String format = MediaUtils.extensionForMIME(THUMBNAIL_MIME);
@@ -21,7 +21,14 @@ package org.kontalk.system;
 import org.kontalk.persistence.Config;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -33,7 +40,11 @@ import org.kontalk.model.Model;
 import org.kontalk.util.MediaUtils;
 
 /**
- * Process incoming avatar events
+ * Process incoming avatar events.
+ *
+ * Avatar data requests are queued, duplicates are dropped and only a limited
+ * number of requests is send at the same time.
+ *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
 public final class AvatarHandler {
@@ -42,10 +53,51 @@ public final class AvatarHandler {
     public static final List<String> SUPPORTED_TYPES = Arrays.asList(ImageIO.getReaderMIMETypes());
 
     private static final int MAX_SIZE = 1024 * 250;
+    private static final int MAX_IN_FLIGHT = 3;
 
     private final Client mClient;
     private final Model mModel;
 
+    // decoding and saving of new avatar images
+    private final ExecutorService mWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Avatar Worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<Request> mQueued = new LinkedHashSet<>();
+    private final Set<Request> mInFlight = new HashSet<>();
+
+    private static final class Request {
+        final JID jid;
+        final String id;
+
+        Request(JID jid, String id) {
+            this.jid = jid;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+
+            if (!(o instanceof Request))
+                return false;
+
+            Request oRequest = (Request) o;
+            return jid.equals(oRequest.jid) && id.equals(oRequest.id);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 5;
+            hash = 41 * hash + Objects.hashCode(this.jid);
+            hash = 41 * hash + Objects.hashCode(this.id);
+            return hash;
+        }
+    }
+
     AvatarHandler(Client client, Model model) {
         mClient = client;
         mModel = model;
@@ -73,10 +125,56 @@ public final class AvatarHandler {
             // avatar is not new
             return;
 
-        mClient.requestAvatar(jid, id);
+        Avatar.DefaultAvatar stored = Avatar.DefaultAvatar.stored(id).orElse(null);
+        if (stored != null) {
+            // already downloaded for another contact
+            contact.setAvatar(stored);
+            return;
+        }
+
+        this.queue(new Request(jid, id));
     }
 
     public void onData(JID jid, String id, byte[] avatarData) {
+        this.finished(new Request(jid, id));
+
+        mWorker.execute(() -> this.processData(jid, id, avatarData));
+    }
+
+    public void onFailure(JID jid, String id) {
+        LOGGER.info("request failed, jid: "+jid+" id: "+id);
+        this.finished(new Request(jid, id));
+    }
+
+    private synchronized void queue(Request request) {
+        if (mInFlight.contains(request) || !mQueued.add(request)) {
+            LOGGER.config("already requested, jid: "+request.jid+" id: "+request.id);
+            return;
+        }
+
+        this.sendNext();
+    }
+
+    private synchronized void finished(Request request) {
+        mInFlight.remove(request);
+
+        this.sendNext();
+    }
+
+    private synchronized void sendNext() {
+        Iterator<Request> it = mQueued.iterator();
+        while (mInFlight.size() < MAX_IN_FLIGHT && it.hasNext()) {
+            Request request = it.next();
+            it.remove();
+
+            boolean sent = mClient.requestAvatar(request.jid, request.id);
+            // if not, avatar is requested again on next notification
+            if (sent)
+                mInFlight.add(request);
+        }
+    }
+
+    private void processData(JID jid, String id, byte[] avatarData) {
         LOGGER.info("new avatar, jid: "+jid+" id: "+id);
 
         if (avatarData.length > MAX_SIZE)
@@ -20,9 +20,9 @@ package org.kontalk.system;
 
 import org.kontalk.persistence.Config;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.jivesoftware.smackx.chatstates.ChatState;
 import org.kontalk.client.Client;
@@ -32,82 +32,138 @@ import org.kontalk.model.chat.SingleChat;
 
 /**
  * Manager handling own chat status for all chats.
+ *
+ * All chats share one timer thread. A chat has at most one pending timeout
+ * check, typing only moves its deadline.
+ *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
 final class ChatStateManager {
 
-    private static final int COMPOSING_TO_PAUSED = 15; // seconds
+    private static final long COMPOSING_TO_PAUSED = TimeUnit.SECONDS.toNanos(15);
+    /** Minimum time between two chat state stanzas for one chat. */
+    private static final long SEND_INTERVAL = TimeUnit.SECONDS.toNanos(2);
 
     private final Client mClient;
-    private final Map<Chat, MyChatState> mChatStateCache = new WeakHashMap<>();
-    private final Timer mTimer = new Timer("Chat State Timer", true);
+    private final Map<Chat, MyChatState> mChatStateCache = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService mTimer;
 
     public ChatStateManager(Client client) {
         mClient = client;
+        mTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Chat State Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     void handleOwnChatStateEvent(Chat chat, ChatState state) {
-        if (!mChatStateCache.containsKey(chat)) {
+        MyChatState chatState = mChatStateCache.get(chat);
+        if (chatState == null) {
             if (state == ChatState.gone)
                 // weare and stay at the default state
                 return;
-            mChatStateCache.put(chat, new MyChatState(chat));
+            chatState = mChatStateCache.computeIfAbsent(chat, c -> new MyChatState(c));
         }
 
-        mChatStateCache.get(chat).handleState(state);
+        chatState.handleState(state);
     }
 
     void imGone() {
         mChatStateCache.values().stream()
                 .forEach(chatState -> chatState.handleState(ChatState.gone));
+
+        mChatStateCache.keySet().removeIf(chat -> chat.isDeleted());
     }
 
     private class MyChatState {
         private final Chat mChat;
         private ChatState mCurrentState;
-        private TimerTask mScheduledStateSet = null;
+        /** The last state the receiver knows about. */
+        private ChatState mSentState;
+        private long mLastSent = System.nanoTime() - SEND_INTERVAL;
+        private long mComposingDeadline;
+        private boolean mCheckScheduled = false;
+        private boolean mSendScheduled = false;
 
         private MyChatState(Chat chat) {
             mChat = chat;
         }
 
-        private void handleState(ChatState state) {
-            if (mScheduledStateSet != null)
-                // whatever we wanted to set next, thats obsolete now
-                mScheduledStateSet.cancel();
+        private synchronized void handleState(ChatState state) {
+            if (state == ChatState.composing) {
+                mComposingDeadline = System.nanoTime() + COMPOSING_TO_PAUSED;
+                if (!mCheckScheduled) {
+                    mCheckScheduled = true;
+                    mTimer.schedule(() -> this.checkComposing(),
+                            COMPOSING_TO_PAUSED, TimeUnit.NANOSECONDS);
+                }
+            }
 
             if (state != mCurrentState)
                 this.setNewState(state);
+        }
 
-            if (state == ChatState.composing) {
-                mScheduledStateSet = new TimerTask() {
-                    @Override
-                    public void run() {
-                        // NOTE: using 'inactive' instead of 'paused' here as
-                        // 'inactive' isn't send at all
-                        MyChatState.this.handleState(ChatState.inactive);
-                    }
-                };
-                mTimer.schedule(mScheduledStateSet,
-                        TimeUnit.SECONDS.toMillis(COMPOSING_TO_PAUSED));
+        private synchronized void checkComposing() {
+            mCheckScheduled = false;
+            if (mCurrentState != ChatState.composing)
+                return;
+
+            long left = mComposingDeadline - System.nanoTime();
+            if (left > 0) {
+                // still typing
+                mCheckScheduled = true;
+                mTimer.schedule(() -> this.checkComposing(), left, TimeUnit.NANOSECONDS);
+                return;
             }
+
+            // NOTE: using 'inactive' instead of 'paused' here as
+            // 'inactive' isn't send at all
+            this.setNewState(ChatState.inactive);
         }
 
         private void setNewState(ChatState state) {
             // currently set states from XEP-0085: active, inactive, composing
             mCurrentState = state;
 
-            if (state == ChatState.active || !(mChat instanceof SingleChat))
+            if (state == ChatState.active || !(mChat instanceof SingleChat)) {
                 // don't send for groups (TODO (?))
                 // 'active' is send inside a message
+                mSentState = state;
+                return;
+            }
+
+            long wait = mLastSent + SEND_INTERVAL - System.nanoTime();
+            if (wait > 0 && state != ChatState.gone) {
+                // send only the latest state when interval is over
+                if (!mSendScheduled) {
+                    mSendScheduled = true;
+                    mTimer.schedule(() -> this.sendScheduled(), wait, TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+
+            this.send();
+        }
+
+        private synchronized void sendScheduled() {
+            mSendScheduled = false;
+            this.send();
+        }
+
+        private void send() {
+            if (mCurrentState == mSentState)
+                // changed back in the meantime
                 return;
 
             Contact contact = ((SingleChat) mChat).getMember().getContact();
             if (contact.isMe() || contact.isBlocked() || contact.isDeleted())
                 return;
 
+            mSentState = mCurrentState;
+            mLastSent = System.nanoTime();
             if (Config.getInstance().getBoolean(Config.NET_SEND_CHAT_STATE))
-                mClient.sendChatState(contact.getJID(), mChat.getXMPPID(), state);
+                mClient.sendChatState(contact.getJID(), mChat.getXMPPID(), mCurrentState);
         }
     }
 
@@ -46,6 +46,7 @@ import org.kontalk.crypto.PGPUtils.PGPCoderKey;
 import org.kontalk.crypto.PersonalKey;
 import org.kontalk.misc.JID;
 import org.kontalk.misc.KonException;
+import org.kontalk.misc.StartupProfiler;
 import org.kontalk.misc.ViewEvent;
 import org.kontalk.model.Account;
 import org.kontalk.model.Avatar;
@@ -99,36 +100,45 @@ public final class Control {
     private final RosterHandler mRosterHandler;
     private final AvatarHandler mAvatarHandler;
     private final GroupControl mGroupControl;
+    private final Outbox mOutbox;
 
     private boolean mShuttingDown = false;
 
     public Control(Path appDir) throws KonException {
         mViewControl = new ViewControl();
 
+        StartupProfiler.begin(StartupProfiler.Phase.CONFIG);
         Config.initialize(appDir);
+        StartupProfiler.end(StartupProfiler.Phase.CONFIG);
 
+        StartupProfiler.begin(StartupProfiler.Phase.DATABASE);
         try {
             mDB = new Database(appDir);
         } catch (KonException ex) {
             LOGGER.log(Level.SEVERE, "can't initialize database", ex);
             throw ex;
+        } finally {
+            StartupProfiler.end(StartupProfiler.Phase.DATABASE);
         }
 
         mModel = Model.setup(mDB, appDir);
 
-        mClient = Client.create(this, appDir);
+        mClient = Client.create(this, mDB, appDir);
         mChatStateManager = new ChatStateManager(mClient);
         mAttachmentManager = AttachmentManager.create(this, mClient, appDir);
         mRosterHandler = new RosterHandler(this, mClient, mModel);
         mAvatarHandler = new AvatarHandler(mClient, mModel);
         mGroupControl = new GroupControl(this, mModel);
+        mOutbox = Outbox.create(this, mClient);
     }
 
     public void launch(boolean ui) {
 
         mModel.load();
+        mOutbox.load(mModel.chats());
 
         if (ui) {
+            StartupProfiler.begin(StartupProfiler.Phase.FIRST_FRAME);
             View view = View.create(mViewControl, mModel).orElse(null);
             if (view == null) {
                 this.shutDown(false);
@@ -141,11 +151,14 @@ public final class Control {
         if (!mModel.account().isPresent()) {
             LOGGER.info("no account found, asking for import...");
             mViewControl.changed(new ViewEvent.MissingAccount(connect));
+            StartupProfiler.finish();
             return;
         }
 
         if (connect)
             mViewControl.connect();
+
+        StartupProfiler.finish();
     }
 
     public void shutDown(boolean exit) {
@@ -193,13 +206,22 @@ public final class Control {
     public void onStatusChange(Status status, EnumSet<FeatureDiscovery.Feature> features) {
         mViewControl.changed(new ViewEvent.StatusChange(status, features));
 
+        if (status == Status.CONNECTED || status == Status.FAILED ||
+                status == Status.ERROR)
+            StartupProfiler.end(StartupProfiler.Phase.CONNECTED);
+
         if (status == Status.CONNECTED) {
-            String[] strings = Config.getInstance().getStringArray(Config.NET_STATUS_LIST);
-            mClient.sendUserPresence(strings.length > 0 ? strings[0] : "");
-            // send all pending messages
-            for (Chat chat: mModel.chats())
-                chat.getMessages().getPending().stream()
-                        .forEach(m -> this.sendMessage(m));
+            if (mClient.streamWasResumed()) {
+                // presence is still set on server
+                LOGGER.info("resumed, skip sending presence");
+            } else {
+                String[] strings = Config.getInstance().getStringArray(Config.NET_STATUS_LIST);
+                mClient.sendUserPresence(strings.length > 0 ? strings[0] : "");
+            }
+            // send all pending messages; messages already written on the
+            // last stream are send again by Smack if the connection was
+            // re-used
+            mOutbox.sendAll(mClient.unackedStanzasResent());
 
             // send public key requests for Kontalk contacts with missing key
             for (Contact contact : mModel.contacts().getAll(false, false))
@@ -450,6 +472,21 @@ public final class Control {
     }
 
     boolean sendMessage(OutMessage message) {
+        mOutbox.add(message);
+
+        if (!this.prepareMessage(message))
+            return false;
+
+        boolean sent = this.sendPreparedMessage(message);
+        mChatStateManager.handleOwnChatStateEvent(message.getChat(), ChatState.active);
+        return sent;
+    }
+
+    /**
+     * Prepare message for sending: upload attachment and encrypt content.
+     * Return true if message can be send now.
+     */
+    boolean prepareMessage(OutMessage message) {
         MessageContent content = message.getContent();
         if (content.getAttachment().isPresent() &&
                 !content.getAttachment().get().hasURL()) {
@@ -481,10 +518,14 @@ public final class Control {
             }
             content.setEncryptedData(encryptedData);
         }
+        return true;
+    }
 
+    boolean sendPreparedMessage(OutMessage message) {
         boolean sent = mClient.sendMessage(message,
                 Config.getInstance().getBoolean(Config.NET_SEND_CHAT_STATE));
-        mChatStateManager.handleOwnChatStateEvent(message.getChat(), ChatState.active);
+        if (sent)
+            mOutbox.written(message);
         return sent;
     }
 
@@ -520,6 +561,11 @@ public final class Control {
         return this.createContact(jid, name, XMPPUtils.isKontalkJID(jid));
     }
 
+    /** Create contact for an entry that already is in the server roster. */
+    Optional<Contact> createRosterContact(JID jid, String name) {
+        return this.createContact(jid, name, XMPPUtils.isKontalkJID(jid), false);
+    }
+
     void sendPresenceSubscription(JID jid, Client.PresenceCommand command) {
         mClient.sendPresenceSubscription(jid, command);
     }
@@ -535,6 +581,13 @@ public final class Control {
     /* private */
 
     private Optional<Contact> createContact(JID jid, String name, boolean encrypted) {
+        Optional<Contact> optContact = this.createContact(jid, name, encrypted, true);
+        optContact.ifPresent(c -> this.maySendKeyRequest(c));
+        return optContact;
+    }
+
+    private Optional<Contact> createContact(JID jid, String name,
+            boolean encrypted, boolean addToRoster) {
         if (!mClient.isConnected()) {
             // workaround: create only if contact can be added to roster
             // this is a general problem with XMPPs roster: no real sync possible
@@ -555,9 +608,8 @@ public final class Control {
 
         newContact.setEncrypted(encrypted);
 
-        this.addToRoster(newContact);
-
-        this.maySendKeyRequest(newContact);
+        if (addToRoster)
+            this.addToRoster(newContact);
 
         return Optional.of(newContact);
     }
@@ -678,6 +730,7 @@ public final class Control {
             if (key == null)
                 return;
 
+            StartupProfiler.begin(StartupProfiler.Phase.CONNECTED);
             mClient.connect(key);
         }
 
@@ -686,6 +739,12 @@ public final class Control {
             mClient.disconnect();
         }
 
+        public void onContactsVisible(List<Contact> contacts) {
+            mClient.prioritizeLastActivity(contacts.stream()
+                    .map(c -> c.getJID())
+                    .collect(Collectors.toList()));
+        }
+
         public void setStatusText(String status) {
             Config conf = Config.getInstance();
             // must be editable
@@ -930,12 +989,15 @@ public final class Control {
                 password = account.getPassword();
             }
 
+            StartupProfiler.begin(StartupProfiler.Phase.KEY_UNLOCK);
             try {
                 return account.load(password);
             } catch (KonException ex) {
                 // something wrong with the account, tell view
                 Control.this.onException(ex);
                 return null;
+            } finally {
+                StartupProfiler.end(StartupProfiler.Phase.KEY_UNLOCK);
             }
         }
 
@@ -0,0 +1,281 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.system;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.kontalk.client.Client;
+import org.kontalk.model.chat.Chat;
+import org.kontalk.model.message.KonMessage;
+import org.kontalk.model.message.OutMessage;
+
+/**
+ * Queue of all outgoing messages with status "PENDING".
+ *
+ * The pending status itself is saved in the database (as message status), the
+ * queue is restored from the model on startup.
+ *
+ * After (re-)connecting all queued messages are send again on an own thread:
+ * encrypted in parallel ahead of time, paced to not exceed the server rate
+ * limit and retried with exponential backoff if sending failed.
+ */
+final class Outbox implements Observer, Runnable {
+    private static final Logger LOGGER = Logger.getLogger(Outbox.class.getName());
+
+    /** Minimum time between two messages send. */
+    private static final long SEND_INTERVAL = 100;
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(2);
+    private static final int MAX_ATTEMPTS = 6;
+
+    private static final Comparator<KonMessage> DATE_COMPARATOR =
+            (KonMessage o1, KonMessage o2) -> o1.getDate().compareTo(o2.getDate());
+
+    private final Control mControl;
+    private final Client mClient;
+
+    // all pending messages, in order of adding
+    private final Set<OutMessage> mMessages =
+            Collections.synchronizedSet(new LinkedHashSet<>());
+    // messages scheduled for sending
+    private final DelayQueue<Task> mQueue = new DelayQueue<>();
+    private final Set<OutMessage> mScheduled =
+            Collections.synchronizedSet(new LinkedHashSet<>());
+    // messages written to the connection, but not acknowledged by server yet
+    private final Set<OutMessage> mWritten =
+            Collections.synchronizedSet(new LinkedHashSet<>());
+    private final ExecutorService mEncryptPool = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            r -> {
+                Thread thread = new Thread(r, "Outbox Encryption");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private long mLastSent = 0;
+
+    private static final class Task implements Delayed {
+        final OutMessage message;
+        /** Result of preparing message for sending: true if ready. */
+        final CompletableFuture<Boolean> prepared;
+        final int attempt;
+        final long due;
+        // for stable order of tasks with same due time
+        final long seq = SEQUENCE.getAndIncrement();
+
+        Task(OutMessage message, CompletableFuture<Boolean> prepared,
+                int attempt, long delay) {
+            this.message = message;
+            this.prepared = prepared;
+            this.attempt = attempt;
+            this.due = System.currentTimeMillis() + delay;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            Task oTask = (Task) o;
+            int comp = Long.compare(due, oTask.due);
+            return comp != 0 ? comp : Long.compare(seq, oTask.seq);
+        }
+    }
+
+    private Outbox(Control control, Client client) {
+        mControl = control;
+        mClient = client;
+    }
+
+    static Outbox create(Control control, Client client) {
+        Outbox outbox = new Outbox(control, client);
+
+        Thread thread = new Thread(outbox, "Outbox Sender");
+        thread.setDaemon(true);
+        thread.start();
+
+        return outbox;
+    }
+
+    /** Restore all pending messages after loading the model. */
+    void load(Iterable<Chat> chats) {
+        for (Chat chat : chats)
+            chat.getMessages().getPending().forEach(m -> this.add(m));
+
+        LOGGER.config("pending messages: "+mMessages.size());
+    }
+
+    void add(OutMessage message) {
+        if (mMessages.add(message))
+            message.addObserver(this);
+    }
+
+    /** The message was handed to the connection. */
+    void written(OutMessage message) {
+        if (mMessages.contains(message))
+            mWritten.add(message);
+    }
+
+    /**
+     * Schedule all pending messages for sending.
+     *
+     * @param unackedResent true if messages written but not acknowledged on
+     * the last stream are send again by the connection itself; these are
+     * skipped then
+     */
+    void sendAll(boolean unackedResent) {
+        if (!unackedResent)
+            mWritten.clear();
+
+        List<OutMessage> messages;
+        synchronized (mMessages) {
+            messages = new ArrayList<>(mMessages);
+        }
+        messages.removeIf(m -> m.getStatus() != KonMessage.Status.PENDING ||
+                m.getChat().isDeleted() ||
+                // send again by connection
+                mWritten.contains(m) ||
+                // still in queue
+                !mScheduled.add(m));
+        if (messages.isEmpty())
+            return;
+
+        LOGGER.info("sending pending messages: "+messages.size());
+
+        // keep order of creation
+        messages.sort(DATE_COMPARATOR);
+        long delay = 0;
+        for (OutMessage message : messages) {
+            CompletableFuture<Boolean> prepared = CompletableFuture.supplyAsync(
+                    () -> mControl.prepareMessage(message), mEncryptPool);
+            mQueue.offer(new Task(message, prepared, 1, delay));
+            delay += SEND_INTERVAL;
+        }
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        if (!(o instanceof OutMessage) || arg != KonMessage.ViewChange.STATUS)
+            return;
+
+        OutMessage message = (OutMessage) o;
+        if (message.getStatus() != KonMessage.Status.PENDING)
+            mWritten.remove(message);
+        if (message.getStatus() != KonMessage.Status.PENDING &&
+                message.getStatus() != KonMessage.Status.ERROR) {
+            // done (error messages may be retried by user)
+            mMessages.remove(message);
+            message.deleteObserver(this);
+        }
+    }
+
+    private void send(Task task) throws InterruptedException {
+        boolean retry = false;
+        try {
+            retry = this.trySend(task);
+        } catch (RuntimeException ex) {
+            // keep sender thread alive for other messages
+            LOGGER.log(Level.WARNING, "error while sending message: "+task.message, ex);
+            task.message.setStatus(KonMessage.Status.ERROR);
+        } finally {
+            if (!retry)
+                mScheduled.remove(task.message);
+        }
+    }
+
+    /** Return true if task was scheduled again. */
+    private boolean trySend(Task task) throws InterruptedException {
+        OutMessage message = task.message;
+        if (message.getStatus() != KonMessage.Status.PENDING ||
+                !mMessages.contains(message))
+            // already done
+            return false;
+
+        if (!mClient.isConnected()) {
+            // send again after next connect
+            return false;
+        }
+
+        boolean prepared;
+        try {
+            prepared = task.prepared.join();
+        } catch (CompletionException ex) {
+            // preparing failed with exception, e.g. on encryption
+            LOGGER.log(Level.WARNING, "can't prepare message: "+message, ex.getCause());
+            message.setStatus(KonMessage.Status.ERROR);
+            return false;
+        }
+        if (!prepared)
+            return false;
+
+        // pacing
+        long wait = mLastSent + SEND_INTERVAL - System.currentTimeMillis();
+        if (wait > 0)
+            Thread.sleep(wait);
+
+        boolean sent = mControl.sendPreparedMessage(message);
+        mLastSent = System.currentTimeMillis();
+        if (sent || !mClient.isConnected())
+            return false;
+
+        if (task.attempt >= MAX_ATTEMPTS) {
+            LOGGER.warning("giving up sending message: "+message);
+            return false;
+        }
+
+        long delay = RETRY_DELAY << (task.attempt - 1);
+        LOGGER.info("retry sending message in "+delay+"ms: "+message);
+        mQueue.offer(new Task(message, task.prepared, task.attempt + 1, delay));
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Task t;
+            try {
+                // blocking
+                t = mQueue.take();
+                this.send(t);
+            } catch (InterruptedException ex) {
+                LOGGER.log(Level.WARNING, "interrupted while waiting ", ex);
+                return;
+            }
+        }
+    }
+}
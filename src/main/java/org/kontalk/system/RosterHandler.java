@@ -18,9 +18,12 @@
 
 package org.kontalk.system;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -34,6 +37,7 @@ import org.kontalk.misc.JID;
 import org.kontalk.misc.ViewEvent;
 import org.kontalk.model.Contact;
 import org.kontalk.model.Contact.Subscription;
+import org.kontalk.model.ContactList;
 import org.kontalk.model.Model;
 import org.kontalk.persistence.Config;
 import org.kontalk.util.ClientUtils;
@@ -67,14 +71,66 @@ public final class RosterHandler {
     }
 
     public void onLoaded(List<ClientUtils.KonRosterEntry> entries) {
-        for (ClientUtils.KonRosterEntry entry: entries)
-            this.onEntryAdded(entry);
+        // consistency check: only apply entries that differ from contact list
+        List<ClientUtils.KonRosterEntry> changedEntries = new ArrayList<>();
+        for (ClientUtils.KonRosterEntry entry: entries) {
+            Contact contact = mModel.contacts().get(entry.jid).orElse(null);
+            if (contact == null || !isUpToDate(contact, entry))
+                changedEntries.add(entry);
+            else
+                this.onContactUpdated(contact);
+        }
+        LOGGER.info("changed entries: "+changedEntries.size()+"/"+entries.size());
 
         // check for deleted entries
-        List<JID> rosterJIDs = entries.stream().map(e -> e.jid).collect(Collectors.toList());
-        for (Contact contact : mModel.contacts().getAll(false, true))
-            if (!rosterJIDs.contains(contact.getJID()))
-                this.onEntryDeleted(contact.getJID());
+        Set<JID> rosterJIDs = entries.stream().map(e -> e.jid).collect(Collectors.toSet());
+        List<JID> deletedJIDs = mModel.contacts().getAll(false, true).stream()
+                .map(c -> c.getJID())
+                .filter(jid -> !rosterJIDs.contains(jid))
+                .collect(Collectors.toList());
+
+        if (!changedEntries.isEmpty() || !deletedJIDs.isEmpty())
+            this.applyEntries(changedEntries, deletedJIDs);
+    }
+
+    public void onEntriesAdded(List<ClientUtils.KonRosterEntry> entries) {
+        this.applyEntries(entries, Collections.emptyList());
+    }
+
+    private void applyEntries(List<ClientUtils.KonRosterEntry> entries,
+            List<JID> deletedJIDs) {
+        ContactList contacts = mModel.contacts();
+
+        // apply all model changes with one commit and notification, network
+        // requests and view events are sent afterwards
+        List<Contact> newContacts = new ArrayList<>();
+        List<Contact> oldContacts = new ArrayList<>(entries.size());
+        List<Contact> deletedContacts = new ArrayList<>(deletedJIDs.size());
+        contacts.batch(() -> {
+            for (JID jid : deletedJIDs)
+                contacts.get(jid).ifPresent(deletedContacts::add);
+            for (ClientUtils.KonRosterEntry entry: entries) {
+                Contact contact = contacts.get(entry.jid).orElse(null);
+                if (contact == null) {
+                    contact = mControl.createRosterContact(entry.jid,
+                            rosterName(entry)).orElse(null);
+                    if (contact == null)
+                        continue;
+                    contact.setSubscriptionStatus(entry.subscription);
+                    newContacts.add(contact);
+                } else {
+                    updateContact(contact, entry);
+                    oldContacts.add(contact);
+                }
+            }
+        });
+
+        for (Contact contact : newContacts)
+            this.onContactCreated(contact);
+        for (Contact contact : oldContacts)
+            this.onContactUpdated(contact);
+        for (Contact contact : deletedContacts)
+            this.onContactDeleted(contact);
     }
 
     public void onEntryAdded(ClientUtils.KonRosterEntry entry) {
@@ -85,21 +141,13 @@ public final class RosterHandler {
 
         LOGGER.info("adding contact from roster, jid: "+entry.jid);
 
-        String name = entry.name.equals(entry.jid.local()) && entry.jid.isHash() ?
-                // this must be the hash string, don't use it as name
-                "" :
-                entry.name;
-
-        Contact newContact = mControl.createContact(entry.jid, name).orElse(null);
+        Contact newContact = mControl.createContact(entry.jid, rosterName(entry)).orElse(null);
         if (newContact == null)
             return;
 
         newContact.setSubscriptionStatus(entry.subscription);
 
-        mControl.maySendKeyRequest(newContact);
-
-        if (entry.subscription == Contact.Subscription.UNSUBSCRIBED)
-            mControl.sendPresenceSubscription(entry.jid, Client.PresenceCommand.REQUEST);
+        this.onContactCreated(newContact);
     }
 
     public void onEntryDeleted(JID jid) {
@@ -110,32 +158,19 @@ public final class RosterHandler {
             return;
         }
 
-        // TODO detect if contact account still exists
-
-        mControl.getViewControl().changed(new ViewEvent.ContactDeleted(contact));
+        this.onContactDeleted(contact);
     }
 
-    // NOTE: also called for every contact in roster on every (re-)connect
     public void onEntryUpdate(ClientUtils.KonRosterEntry entry) {
         Contact contact = mModel.contacts().get(entry.jid).orElse(null);
         if (contact == null) {
             LOGGER.info("can't find contact with jid: "+entry.jid);
             return;
         }
-        // subscription may have changed
-        contact.setSubscriptionStatus(entry.subscription);
 
-        // maybe subscribed now
-        mControl.maySendKeyRequest(contact);
+        updateContact(contact, entry);
 
-        // name may have changed
-        if (contact.getName().isEmpty() && !entry.name.equals(entry.jid.local()))
-            contact.setName(entry.name);
-
-        if (contact.getSubScription() == Subscription.SUBSCRIBED &&
-                (contact.getOnline() == Contact.Online.UNKNOWN ||
-                        contact.getOnline() == Contact.Online.NO))
-            mClient.sendLastActivityRequest(contact.getJID());
+        this.onContactUpdated(contact);
     }
 
     public void onSubscriptionRequest(JID jid, byte[] rawKey) {
@@ -261,4 +296,49 @@ public final class RosterHandler {
 
         mControl.getViewControl().changed(new ViewEvent.PresenceError(contact, error));
     }
+
+    private void onContactCreated(Contact contact) {
+        mControl.maySendKeyRequest(contact);
+
+        if (contact.getSubScription() == Contact.Subscription.UNSUBSCRIBED)
+            mControl.sendPresenceSubscription(contact.getJID(), Client.PresenceCommand.REQUEST);
+    }
+
+    private void onContactUpdated(Contact contact) {
+        // maybe subscribed now
+        mControl.maySendKeyRequest(contact);
+
+        if (contact.getSubScription() == Subscription.SUBSCRIBED &&
+                (contact.getOnline() == Contact.Online.UNKNOWN ||
+                        contact.getOnline() == Contact.Online.NO))
+            mClient.sendLastActivityRequest(contact.getJID());
+    }
+
+    private void onContactDeleted(Contact contact) {
+        // TODO detect if contact account still exists
+
+        mControl.getViewControl().changed(new ViewEvent.ContactDeleted(contact));
+    }
+
+    private static void updateContact(Contact contact, ClientUtils.KonRosterEntry entry) {
+        // subscription may have changed
+        contact.setSubscriptionStatus(entry.subscription);
+
+        // name may have changed
+        if (contact.getName().isEmpty() && !entry.name.equals(entry.jid.local()))
+            contact.setName(entry.name);
+    }
+
+    /** Return true if updating the contact with the entry changes nothing. */
+    private static boolean isUpToDate(Contact contact, ClientUtils.KonRosterEntry entry) {
+        return contact.getSubScription() == entry.subscription &&
+                (!contact.getName().isEmpty() || entry.name.equals(entry.jid.local()));
+    }
+
+    private static String rosterName(ClientUtils.KonRosterEntry entry) {
+        return entry.name.equals(entry.jid.local()) && entry.jid.isHash() ?
+                // this must be the hash string, don't use it as name
+                "" :
+                entry.name;
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Image scaling service. Scaling is done by progressive bilinear interpolation:
+ * the image is halved in size until the target size is reached.
+ *
+ * Async methods run on a fixed thread pool, never on the calling thread.
+ */
+public final class ImageScaler {
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            r -> {
+                Thread thread = new Thread(r, "Image Scaler");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+
+    private ImageScaler() { throw new AssertionError(); }
+
+    /**
+     * Scale image down to minimum of width or height, preserving ratio.
+     */
+    public static CompletableFuture<BufferedImage> scaleAsync(BufferedImage image,
+            int width, int height) {
+        return CompletableFuture.supplyAsync(() -> scale(image, width, height), POOL);
+    }
+
+    /**
+     * Scale image down to maximum of width or height, preserving ratio.
+     */
+    public static CompletableFuture<BufferedImage> scaleMaxAsync(BufferedImage image,
+            int width, int height) {
+        return CompletableFuture.supplyAsync(() -> scaleMax(image, width, height), POOL);
+    }
+
+    /**
+     * Scale image down to minimum of width or height, preserving ratio.
+     * Blocking.
+     */
+    public static BufferedImage scale(BufferedImage image, int width, int height) {
+        return scale(image, width, height, false);
+    }
+
+    /**
+     * Scale image down to maximum of width or height, preserving ratio.
+     * Blocking.
+     */
+    public static BufferedImage scaleMax(BufferedImage image, int width, int height) {
+        return scale(image, width, height, true);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height,
+            boolean max) {
+        int iw = image.getWidth();
+        int ih = image.getHeight();
+        if (max && (iw <= width || ih <= height) ||
+                !max && (iw <= width && ih <= height)) {
+            return image;
+        }
+        double sw = width / (iw * 1.0);
+        double sh = height / (ih * 1.0);
+        double scale = max ? Math.max(sw, sh) : Math.min(sw, sh);
+        return resize(image,
+                Math.max(1, (int) (iw * scale)),
+                Math.max(1, (int) (ih * scale)));
+    }
+
+    /**
+     * Resize image to exactly width and height.
+     * Blocking.
+     */
+    public static BufferedImage resize(BufferedImage image, int width, int height) {
+        int type = image.getTransparency() == Transparency.OPAQUE ?
+                BufferedImage.TYPE_INT_RGB :
+                BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage result = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        do {
+            // one step bilinear interpolation is only good down to half the size
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            result = draw(result, w, h, type);
+        } while (w != width || h != height);
+
+        return result;
+    }
+
+    private static BufferedImage draw(BufferedImage image, int width, int height,
+            int type) {
+        BufferedImage result = new BufferedImage(width, height, type);
+
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+
+        return result;
+    }
+}
@@ -19,10 +19,13 @@
 package org.kontalk.util;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.awt.image.ImageObserver;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -33,6 +36,7 @@ import java.io.InputStream;
 import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,7 +46,6 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.tika.mime.MimeType;
 import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
-import org.kontalk.misc.Callback;
 
 /**
  *
@@ -138,9 +141,7 @@ public class MediaUtils {
 
     public static BufferedImage readImage(Path path) {
         BufferedImage img = readImage(path.toFile()).orElse(null);
-        return img != null ?
-                img :
-                new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+        return img != null ? img : emptyImage();
     }
 
     public static Optional<BufferedImage> readImage(File file) {
@@ -157,6 +158,101 @@ public class MediaUtils {
         return Optional.empty();
     }
 
+    /**
+     * Read image from file and scale it down to minimum width/height,
+     * preserving ratio.
+     * Large images are subsampled while decoding, the full-resolution image is
+     * never loaded into memory.
+     */
+    public static BufferedImage readThumbnail(Path path, int width, int height) {
+        BufferedImage img = readThumbnail(path.toFile(), width, height).orElse(null);
+        return img != null ? img : emptyImage();
+    }
+
+    public static Optional<BufferedImage> readThumbnail(File file, int width, int height) {
+        if (!file.exists()) {
+            LOGGER.warning("image file does not exist: "+file);
+            return Optional.empty();
+        }
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = readerOrNull(iis);
+            if (reader == null) {
+                LOGGER.warning("no image reader for file: "+file);
+                return Optional.empty();
+            }
+            try {
+                int iw = reader.getWidth(0);
+                int ih = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int sub = subsampling(iw, ih, width, height);
+                if (sub > 1)
+                    param.setSourceSubsampling(sub, sub, 0, 0);
+
+                BufferedImage img = reader.read(0, param);
+                return Optional.of(ImageScaler.scale(img, width, height));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "can't read thumbnail, path: "+file.getPath(), ex);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Read the dimension of an image file without decoding the pixel data.
+     */
+    public static Optional<Dimension> readImageSize(File file) {
+        if (!file.exists()) {
+            LOGGER.warning("image file does not exist: "+file);
+            return Optional.empty();
+        }
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = readerOrNull(iis);
+            if (reader == null) {
+                LOGGER.warning("no image reader for file: "+file);
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "can't read image size, path: "+file.getPath(), ex);
+        }
+        return Optional.empty();
+    }
+
+    private static ImageReader readerOrNull(ImageInputStream iis) {
+        if (iis == null)
+            return null;
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext())
+            return null;
+
+        ImageReader reader = readers.next();
+        reader.setInput(iis, true, true);
+        return reader;
+    }
+
+    /**
+     * Subsampling factor for decoding an image that will be scaled down to
+     * fit width/height. Decoding stops at twice the target size to leave
+     * enough pixels for smooth resampling.
+     */
+    private static int subsampling(int iw, int ih, int width, int height) {
+        double scale = Math.min(width / (iw * 1.0), height / (ih * 1.0));
+        return scale >= 1 ? 1 : Math.max(1, (int) (1 / (scale * 2)));
+    }
+
+    private static BufferedImage emptyImage() {
+        return new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+    }
+
     public static Optional<BufferedImage> readImage(byte[] imgData) {
         try {
             return Optional.ofNullable(ImageIO.read(new ByteArrayInputStream(imgData)));
@@ -213,49 +309,24 @@ public class MediaUtils {
 
         double scale = Math.sqrt(maxPixels / (iw * ih * 1.0));
 
-        return toBufferedImage(scaleImage(image, (int) (iw * scale), (int) (ih * scale)));
+        return ImageScaler.resize(image, (int) (iw * scale), (int) (ih * scale));
     }
 
     /**
-     * Scale image down to minimum width/height, preserving ratio.
-     * Blocking.
+     * Copy an image that is completely loaded to a buffered image.
      */
-    public static BufferedImage scale(Image image, int width, int height) {
-        return toBufferedImage(scaleAsync(image, width, height));
-    }
-
-    private static BufferedImage toBufferedImage(Image image) {
-        final Callback.Synchronizer syncer = new Callback.Synchronizer();
-
-        ImageObserver observer = new ImageObserver() {
-            @Override
-            public boolean imageUpdate(Image img, int infoflags, int x, int y, int width, int height) {
-                // ignore if image is not completely loaded
-                if ((infoflags & ImageObserver.ALLBITS) == 0) {
-                    return true;
-                }
-
-                // scaling done, continue with calling thread
-                syncer.sync();
-                return false;
-            }
-        };
-
-        if (image.getWidth(observer) == -1) {
-            syncer.waitForSync();
-        }
-
-        // convert to buffered image, source: https://stackoverflow.com/a/13605411
+    public static BufferedImage toBufferedImage(Image image) {
         if (image instanceof BufferedImage)
             return (BufferedImage) image;
 
         int iw = image.getWidth(null);
         int ih = image.getHeight(null);
-        if (iw == -1) {
+        if (iw == -1 || ih == -1) {
             LOGGER.warning("image not loaded yet");
+            return emptyImage();
         }
 
-        BufferedImage bimage = new BufferedImage(iw, ih, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage bimage = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_ARGB);
 
         Graphics2D bGr = bimage.createGraphics();
         bGr.drawImage(image, 0, 0, null);
@@ -263,36 +334,4 @@ public class MediaUtils {
 
         return bimage;
     }
-
-    public static Image scaleAsync(Image image, int width, int height) {
-        return scaleAsync(image, width, height, false);
-    }
-
-    public static Image scaleMaxAsync(Image image, int width, int height) {
-        return scaleAsync(image, width, height, true);
-    }
-
-    /**
-     * Scale image down to maximum or minimum of width or height, preserving ratio.
-     * Async: returned image may not be fully loaded.
-     */
-    private static Image scaleAsync(Image image, int width, int height, boolean max) {
-        int iw = image.getWidth(null);
-        int ih = image.getHeight(null);
-        if (iw == -1 || ih == -1) {
-            LOGGER.warning("image not loaded yet");
-        }
-        if (max && (iw <= width || ih <= height) ||
-                !max && (iw <= width && ih <= height)) {
-            return image;
-        }
-        double sw = width / (iw * 1.0);
-        double sh = height / (ih * 1.0);
-        double scale = max ? Math.max(sw, sh) : Math.min(sw, sh);
-        return scaleImage(image, (int) (iw * scale), (int) (ih * scale));
-    }
-
-    private static Image scaleImage(Image image, int width, int height) {
-        return image.getScaledInstance(width, height, Image.SCALE_FAST);
-    }
 }
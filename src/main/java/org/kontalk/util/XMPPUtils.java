@@ -21,10 +21,10 @@ import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.input.CharSequenceReader;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.util.PacketParserUtils;
@@ -49,16 +49,29 @@ public final class XMPPUtils {
         throw new AssertionError();
     }
 
-    private static XmlPullParserFactory _xmlFactory;
+    private static final XmlPullParserFactory XML_FACTORY = createFactory();
 
-    private static XmlPullParser getPullParser(String data) throws XmlPullParserException {
-        if (_xmlFactory == null) {
-            _xmlFactory = XmlPullParserFactory.newInstance();
-            _xmlFactory.setNamespaceAware(true);
+    /** Parsers are not thread-safe, but can be reused with new input. */
+    private static final ThreadLocal<XmlPullParser> PARSER = new ThreadLocal<>();
+
+    private static XmlPullParserFactory createFactory() {
+        try {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory;
+        } catch (XmlPullParserException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private static XmlPullParser getPullParser(CharSequence data) throws XmlPullParserException {
+        XmlPullParser parser = PARSER.get();
+        if (parser == null) {
+            parser = XML_FACTORY.newPullParser();
+            PARSER.set(parser);
         }
 
-        XmlPullParser parser = _xmlFactory.newPullParser();
-        parser.setInput(new StringReader(data));
+        parser.setInput(new CharSequenceReader(data));
 
         return parser;
     }
@@ -66,7 +79,7 @@ public final class XMPPUtils {
     /**
      * Parses a &lt;xmpp&gt;-wrapped message stanza.
      */
-    public static Message parseMessageStanza(String data)
+    public static Message parseMessageStanza(CharSequence data)
             throws XmlPullParserException, IOException, SmackException {
 
         XmlPullParser parser = getPullParser(data);
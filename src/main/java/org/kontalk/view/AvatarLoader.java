@@ -25,7 +25,8 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import org.apache.commons.lang.ObjectUtils;
@@ -33,7 +34,6 @@ import org.kontalk.model.Avatar;
 import org.kontalk.model.chat.Chat;
 import org.kontalk.model.Contact;
 import org.kontalk.model.chat.SingleChat;
-import org.kontalk.util.MediaUtils;
 import org.kontalk.util.Tr;
 
 /**
@@ -46,7 +46,17 @@ final class AvatarLoader {
     private static final Color FALLBACK_COLOR = new Color(220, 220, 220);
     private static final Color GROUP_COLOR = new Color(160, 160, 160);
 
-    private static final Map<Item, AvatarImg> CACHE = new HashMap<>();
+    /** Maximum number of avatar images kept in memory. */
+    private static final int CACHE_SIZE = 500;
+
+    // least-recently-used, scaled images of contact avatars are also saved on disk
+    private static final Map<Item, AvatarImg> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<Item, AvatarImg>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Item, AvatarImg> eldest) {
+                    return this.size() > CACHE_SIZE;
+                }
+            });
 
     static AvatarImg load(Chat chat, int size) {
         return load(new Item(chat, size));
@@ -63,10 +73,12 @@ final class AvatarLoader {
     private AvatarLoader() {};
 
     private static AvatarImg load(Item item) {
-        if (!CACHE.containsKey(item)) {
-            CACHE.put(item, item.createImage());
+        AvatarImg img = CACHE.get(item);
+        if (img == null) {
+            img = item.createImage();
+            CACHE.put(item, img);
         }
-        return CACHE.get(item);
+        return img;
     }
 
     static class AvatarImg {
@@ -144,11 +156,9 @@ final class AvatarLoader {
 
         private AvatarImg createImage() {
             if (mAvatar != null) {
-                BufferedImage img = mAvatar.loadImage().orElse(null);
+                BufferedImage img = mAvatar.loadImage(mSize).orElse(null);
                 if (img != null) {
-                    return new AvatarImg(
-                            MediaUtils.scale(img, mSize, mSize),
-                            false);
+                    return new AvatarImg(img, false);
                 }
             }
 
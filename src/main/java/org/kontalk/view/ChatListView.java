@@ -24,6 +24,7 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -68,6 +69,14 @@ final class ChatListView extends ListView<Chat> {
         this.setSelectedItem(i);
     }
 
+    /** The first chats in list order, most recently active first. */
+    List<Chat> firstChats(int max) {
+        List<Chat> chats = new ArrayList<>();
+        for (int i = 0; i < Math.min(max, this.getRowCount()); i++)
+            chats.add(this.getDisplayedValueAt(i));
+        return chats;
+    }
+
     void save() {
         Config.getInstance().setProperty(Config.VIEW_SELECTED_CHAT,
                 this.getSelectedRow());
@@ -208,7 +217,9 @@ final class ChatListView extends ListView<Chat> {
             mAvatar.setAvatarImage(value);
 
             // title
-            mTitleLabel.setText(Utils.chatTitle(value));
+            int unread = value.getUnreadCount();
+            mTitleLabel.setText(Utils.chatTitle(value) +
+                    (unread > 0 ? " (" + unread + ")" : ""));
             if (value.isGroupChat())
                 mTitleLabel.setForeground(View.DARK_GREEN);
 
@@ -29,8 +29,10 @@ import javax.swing.event.DocumentEvent;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
@@ -48,13 +50,18 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import com.alee.extended.panel.GroupPanel;
 import com.alee.extended.panel.WebOverlay;
@@ -79,10 +86,12 @@ import org.kontalk.client.FeatureDiscovery;
 import org.kontalk.model.Contact;
 import org.kontalk.model.chat.Chat;
 import org.kontalk.model.chat.GroupChat;
+import org.kontalk.model.message.KonMessage;
 import org.kontalk.persistence.Config;
 import org.kontalk.system.AttachmentManager;
 import org.kontalk.system.Control;
 import org.kontalk.util.EncodingUtils;
+import org.kontalk.util.ImageScaler;
 import org.kontalk.util.MediaUtils;
 import org.kontalk.util.Tr;
 
@@ -93,7 +102,8 @@ import org.kontalk.util.Tr;
  *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
-final class ChatView extends WebPanel implements Observer {
+final class ChatView extends WebPanel implements Observer, ViewUpdates.Receiver {
+    private static final Logger LOGGER = Logger.getLogger(ChatView.class.getName());
 
     private static final Icon ATT_ICON = Utils.getIcon("ic_ui_attach.png");
     private static final Icon SEND_ICON = Utils.getIcon("ic_ui_send.png");
@@ -116,7 +126,49 @@ final class ChatView extends WebPanel implements Observer {
     private final WebOverlay mOverlay;
     private final WebLabel mOverlayLabel;
 
-    private final Map<Chat, MessageList> mMessageListCache = new HashMap<>();
+    /** Maximum number of message lists kept in memory. */
+    private static final int MAX_CACHED_LISTS = 10;
+
+    // least-recently-used, evicted lists are disposed
+    private final Map<Chat, MessageList> mMessageListCache =
+            new LinkedHashMap<Chat, MessageList>(MAX_CACHED_LISTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Chat, MessageList> eldest) {
+                    if (this.size() <= MAX_CACHED_LISTS)
+                        return false;
+
+                    disposeList(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            };
+    /** Maximum number of view states kept for chats shown before. */
+    private static final int MAX_LIST_STATES = 5 * MAX_CACHED_LISTS;
+
+    // view state of chats that were shown before, least-recently-used
+    private final Map<Chat, ListState> mListStates =
+            new LinkedHashMap<Chat, ListState>(MAX_LIST_STATES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Chat, ListState> eldest) {
+                    return this.size() > MAX_LIST_STATES;
+                }
+            };
+
+    /** View state of a message list, for restoring a new list of the same chat. */
+    private static final class ListState {
+        final Point viewPosition;
+        /** Database IDs of selected messages. */
+        final Set<Integer> selected;
+        /** Number of (newest) rows in list, view position is relative to them. */
+        final int rows;
+        final int listHeight;
+
+        ListState(Point viewPosition, Set<Integer> selected, int rows, int listHeight) {
+            this.viewPosition = viewPosition;
+            this.selected = selected;
+            this.rows = rows;
+            this.listHeight = listHeight;
+        }
+    }
 
     private Background mDefaultBG;
 
@@ -290,24 +342,101 @@ final class ChatView extends WebPanel implements Observer {
     }
 
     void showChat(Chat chat) {
-        Chat oldChat = this.getCurrentChat().orElse(null);
-        if (oldChat != null)
-            oldChat.deleteObserver(this);
+        MessageList oldList = this.currentMessageListOrNull();
+        if (oldList != null) {
+            oldList.getChat().deleteObserver(this);
+            mListStates.put(oldList.getChat(), new ListState(
+                    mScrollPane.getViewport().getViewPosition(),
+                    oldList.getSelectedValues().stream()
+                            .map(m -> m.getID())
+                            .collect(Collectors.toSet()),
+                    oldList.getModel().getRowCount(),
+                    oldList.getPreferredSize().height));
+        }
 
         chat.addObserver(this);
 
-        if (!mMessageListCache.containsKey(chat)) {
-            MessageList newMessageList = new MessageList(mView, this, chat);
-            chat.addObserver(newMessageList);
-            mMessageListCache.put(chat, newMessageList);
+        MessageList list = mMessageListCache.get(chat);
+        boolean restored = false;
+        if (list == null) {
+            list = this.createList(chat);
+
+            ListState state = mListStates.get(chat);
+            if (state != null) {
+                this.restoreState(list, state);
+                restored = true;
+            }
         }
         // set to current chat
-        mScrollPane.getViewport().setView(mMessageListCache.get(chat));
+        mScrollPane.getViewport().setView(list);
+        if (list.takeScrollDown() && !restored)
+            this.setScrollDown();
         this.onChatChange();
 
         chat.setRead();
     }
 
+    private void restoreState(MessageList list, ListState state) {
+        Set<KonMessage> selected = state.selected.isEmpty() ?
+                Collections.emptySet() :
+                list.getChat().getMessages().getAll().stream()
+                        .filter(m -> state.selected.contains(m.getID()))
+                        .collect(Collectors.toSet());
+        // new list only contains the newest rows yet
+        list.insertAtLeast(state.rows, selected);
+        list.setSelectedValues(selected);
+        mScrollDown = false;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (ChatView.this.currentMessageListOrNull() != list)
+                    return;
+                // older rows may have been added on top in the meantime,
+                // keep distance to bottom
+                int shift = list.getPreferredSize().height - state.listHeight;
+                mScrollPane.getViewport().setViewPosition(new Point(
+                        state.viewPosition.x,
+                        Math.max(0, state.viewPosition.y + shift)));
+            }
+        });
+    }
+
+    private void disposeList(Chat chat, MessageList list) {
+        list.dispose();
+        chat.deleteObserver(list);
+    }
+
+    /**
+     * Create message lists for chats in advance, one per EDT task. Chats
+     * should be ordered by priority.
+     */
+    void warmUp(List<Chat> chats) {
+        int max = Math.min(chats.size(), MAX_CACHED_LISTS - 1);
+        this.warmUp(new ArrayList<>(chats.subList(0, max)), 0);
+    }
+
+    private void warmUp(List<Chat> chats, int index) {
+        if (index >= chats.size())
+            return;
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                Chat chat = chats.get(index);
+                if (!chat.isDeleted() && !mMessageListCache.containsKey(chat))
+                    ChatView.this.createList(chat);
+                ChatView.this.warmUp(chats, index + 1);
+            }
+        });
+    }
+
+    private MessageList createList(Chat chat) {
+        MessageList list = new MessageList(mView, this, chat);
+        chat.addObserver(list);
+        mMessageListCache.put(chat, list);
+        return list;
+    }
+
     void loadDefaultBG() {
         String imagePath = Config.getInstance().getString(Config.VIEW_CHAT_BG);
         mDefaultBG = !imagePath.isEmpty() ?
@@ -394,16 +523,12 @@ final class ChatView extends WebPanel implements Observer {
 
     @Override
     public void update(Observable o, final Object arg) {
-        if (SwingUtilities.isEventDispatchThread()) {
-            this.updateOnEDT(arg);
-            return;
-        }
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                ChatView.this.updateOnEDT(arg);
-            }
-        });
+        ViewUpdates.post(this, o, arg);
+    }
+
+    @Override
+    public void updateOnEDT(Observable o, Object arg) {
+        this.updateOnEDT(arg);
     }
 
     private void updateOnEDT(Object arg) {
@@ -411,10 +536,9 @@ final class ChatView extends WebPanel implements Observer {
             Chat chat = (Chat) arg;
             if (chat.isDeleted()) {
                 MessageList viewList = mMessageListCache.remove(chat);
-                if (viewList != null) {
-                    viewList.clearItems();
-                    chat.deleteObserver(viewList);
-                }
+                if (viewList != null)
+                    this.disposeList(chat, viewList);
+                mListStates.remove(chat);
             }
         }
 
@@ -571,8 +695,12 @@ final class ChatView extends WebPanel implements Observer {
         private final Image mOrigin;
         // background color, set by user or null
         private final Color mCustomColor;
+        // original image, converted when loaded
+        private BufferedImage mOriginBuffered = null;
         // cached background with size of viewport
         private BufferedImage mCached = null;
+        // size of scaled image currently in progress or null
+        private Dimension mPendingSize = null;
 
         /** Default, no chat specific settings. */
         Background(Component parent) {
@@ -614,11 +742,12 @@ final class ChatView extends WebPanel implements Observer {
             return Optional.ofNullable(mCached);
         }
 
-        // step 1: ensure original image is loaded (if present)
+        // step 1: ensure original image is completely loaded (if present)
         private boolean loadOrigin() {
             if (mOrigin == null)
                 return true;
-            return mOrigin.getWidth(this) != -1;
+            // starts loading if necessary, observer is notified when done
+            return mParent.prepareImage(mOrigin, this);
         }
 
         // step 2: scale image (if present)
@@ -628,14 +757,27 @@ final class ChatView extends WebPanel implements Observer {
                 this.updateCachedBG(null);
                 return true;
             }
-            Image scaledImage = MediaUtils.scaleMaxAsync(mOrigin,
-                    mParent.getWidth(),
-                    mParent.getHeight());
-            if (scaledImage.getWidth(this) != -1) {
-                // goto 3
-                this.updateCachedBG(scaledImage);
-                return true;
-            }
+            final Dimension size = mParent.getSize();
+            if (size.equals(mPendingSize))
+                // already in progress
+                return false;
+
+            if (mOriginBuffered == null)
+                mOriginBuffered = MediaUtils.toBufferedImage(mOrigin);
+
+            mPendingSize = size;
+            ImageScaler.scaleMaxAsync(mOriginBuffered, size.width, size.height)
+                    .thenAccept(scaledImage -> SwingUtilities.invokeLater(() -> {
+                        if (size.equals(mPendingSize))
+                            mPendingSize = null;
+
+                        if (size.equals(mParent.getSize())) {
+                            // scaling done, goto 3
+                            this.updateCachedBG(scaledImage);
+                        }
+                        // else: outdated, repainting starts again
+                        mParent.repaint();
+                    }));
             return false;
         }
 
@@ -670,23 +812,19 @@ final class ChatView extends WebPanel implements Observer {
 
         @Override
         public boolean imageUpdate(Image img, int infoflags, int x, int y, int w, int h) {
+            if ((infoflags & (ImageObserver.ERROR | ImageObserver.ABORT)) != 0) {
+                LOGGER.warning("can't load background image");
+                return false;
+            }
+
             // ignore if image is not completely loaded
             if ((infoflags & ImageObserver.ALLBITS) == 0) {
                 return true;
             }
 
-            if (img.equals(mOrigin)) {
-                // original image done loading, goto 2
-                boolean sync = this.scaleOrigin();
-                if (sync)
-                    mParent.repaint();
-                return false;
-            } else {
-                // scaling done, goto 3
-                this.updateCachedBG(img);
-                mParent.repaint();
-                return false;
-            }
+            // original image done loading, goto 2 on EDT
+            mParent.repaint();
+            return false;
         }
     }
 
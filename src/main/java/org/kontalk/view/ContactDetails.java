@@ -19,7 +19,6 @@
 package org.kontalk.view;
 
 import javax.swing.Box;
-import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.BorderLayout;
@@ -59,7 +58,7 @@ import org.kontalk.view.AvatarLoader.AvatarImg;
  *
  * @author Alexander Bikadorov {@literal <bikaejkb@mail.tu-berlin.de>}
  */
-final class ContactDetails extends WebPanel implements Observer {
+final class ContactDetails extends WebPanel implements Observer, ViewUpdates.Receiver {
 
     private static final Map<Contact, ContactDetails> CACHE = new HashMap<>();
 
@@ -246,16 +245,13 @@ final class ContactDetails extends WebPanel implements Observer {
 
     @Override
     public void update(Observable o, final Object arg) {
-        if (SwingUtilities.isEventDispatchThread()) {
-            this.updateOnEDT();
-            return;
-        }
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                ContactDetails.this.updateOnEDT();
-            }
-        });
+        // all changes are handled the same
+        ViewUpdates.post(this, o, null);
+    }
+
+    @Override
+    public void updateOnEDT(Observable o, Object arg) {
+        this.updateOnEDT();
     }
 
     private void updateOnEDT() {
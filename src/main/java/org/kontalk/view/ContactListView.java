@@ -19,13 +19,16 @@
 package org.kontalk.view;
 
 import javax.swing.Box;
+import javax.swing.JViewport;
 import javax.swing.ListSelectionModel;
+import javax.swing.event.ChangeListener;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,6 +52,10 @@ import org.kontalk.util.Tr;
 final class ContactListView extends ListView<Contact> {
 
     private final Model mModel;
+    /** Report visible contacts when the viewport was scrolled or resized. */
+    private final ChangeListener mViewportListener = e -> this.visibleChanged();
+    private JViewport mViewport = null;
+    private List<Contact> mVisible = Collections.emptyList();
 
     ContactListView(final View view, Model model) {
         super(view,
@@ -74,6 +81,35 @@ final class ContactListView extends ListView<Contact> {
         this.updateOnEDT(null);
     }
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+
+        if (this.getParent() instanceof JViewport) {
+            mViewport = (JViewport) this.getParent();
+            mViewport.addChangeListener(mViewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (mViewport != null) {
+            mViewport.removeChangeListener(mViewportListener);
+            mViewport = null;
+        }
+
+        super.removeNotify();
+    }
+
+    private void visibleChanged() {
+        List<Contact> visible = this.getVisibleValues();
+        if (visible.equals(mVisible))
+            return;
+
+        mVisible = visible;
+        mView.getControl().onContactsVisible(visible);
+    }
+
     @Override
     public int compare(Contact o1, Contact o2) {
         return Utils.compareContacts(o1, o2);
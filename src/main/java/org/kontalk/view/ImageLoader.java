@@ -46,8 +46,7 @@ class ImageLoader {
 
     private static ImageIcon load(Path path) {
         return new ImageIcon(
-                MediaUtils.scale(
-                        MediaUtils.readImage(path),
+                MediaUtils.readThumbnail(path,
                         AttachmentManager.THUMBNAIL_DIM.width,
                         AttachmentManager.THUMBNAIL_DIM.height));
     }
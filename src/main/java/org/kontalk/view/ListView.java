@@ -43,8 +43,10 @@ import java.awt.event.MouseMotionAdapter;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
@@ -73,7 +75,7 @@ import org.kontalk.misc.Searchable;
  * @param <V> the (model) value type in the list
  */
 abstract class ListView<V extends Observable & Searchable>
-        extends WebTable implements Observer, Comparator<V> {
+        extends WebTable implements Observer, ViewUpdates.Receiver, Comparator<V> {
 
     private final Class mVClass;
     protected final View mView;
@@ -84,6 +86,8 @@ abstract class ListView<V extends Observable & Searchable>
     /** Flyweight item that is used by cell editor. */
     private final FlyweightItem mEditorItem;
     private final Timer mTimer;
+    /** Model row index for each value, null if rows were added or removed. */
+    private Map<V, Integer> mRowIndex = null;
 
     /** The current search string. */
     private String mSearch = "";
@@ -124,7 +128,8 @@ abstract class ListView<V extends Observable & Searchable>
         List<RowSorter.SortKey> sortKeys = new ArrayList<>();
         sortKeys.add(new RowSorter.SortKey(0, SortOrder.ASCENDING));
         mRowSorter.setSortKeys(sortKeys);
-        mRowSorter.setSortsOnUpdates(true);
+        // item updates are sorted manually, see updateItem()
+        mRowSorter.setSortsOnUpdates(false);
         mRowSorter.sort();
         // filter
         RowFilter<DefaultTableModel, Integer> rowFilter = new RowFilter<DefaultTableModel, Integer>() {
@@ -267,6 +272,7 @@ abstract class ListView<V extends Observable & Searchable>
             if (!values.contains(value)) {
                 value.deleteObserver(this);
                 mModel.removeRow(i);
+                mRowIndex = null;
                 i--;
             } else {
                 oldValues.add(value);
@@ -279,14 +285,20 @@ abstract class ListView<V extends Observable & Searchable>
             if (!oldValues.contains(v)) {
                 mModel.addRow(new Object[]{v});
                 v.addObserver(this);
+                mRowIndex = null;
                 added = true;
             }
         }
         return added;
     }
 
+    @SuppressWarnings("unchecked")
     protected void clearItems() {
+        for (int i=0; i < mModel.getRowCount(); i++)
+            ((V) mModel.getValueAt(i, 0)).deleteObserver(this);
+
         mModel.setRowCount(0);
+        mRowIndex = null;
     }
 
     protected V getDisplayedValueAt(int row) {
@@ -306,6 +318,22 @@ abstract class ListView<V extends Observable & Searchable>
         return values;
     }
 
+    /** Values of all rows that are (partly) visible. */
+    protected List<V> getVisibleValues() {
+        List<V> values = new ArrayList<>();
+        Rectangle rect = this.getVisibleRect();
+        int first = this.rowAtPoint(rect.getLocation());
+        if (first == -1)
+            return values;
+        int last = this.rowAtPoint(new Point(rect.x, rect.y + rect.height - 1));
+        if (last == -1)
+            last = this.getRowCount() - 1;
+
+        for (int i = first; i <= last; i++)
+            values.add(this.getDisplayedValueAt(i));
+        return values;
+    }
+
     protected Optional<V> getSelectedValue() {
         int row = this.getSelectedRow();
         return row == -1 ?
@@ -328,6 +356,15 @@ abstract class ListView<V extends Observable & Searchable>
             this.setSelectedItem(0);
     }
 
+    /** Select all displayed items containing one of the values specified. */
+    void setSelectedValues(Set<V> values) {
+        this.clearSelection();
+        for (int i=0; i < this.getRowCount(); i++) {
+            if (values.contains(this.getDisplayedValueAt(i)))
+                this.getSelectionModel().addSelectionInterval(i, i);
+        }
+    }
+
     protected void setSelectedItem(int i) {
         if (i >= mModel.getRowCount())
             return;
@@ -348,28 +385,71 @@ abstract class ListView<V extends Observable & Searchable>
 
     @Override
     public void update(Observable o, Object arg) {
-        if (SwingUtilities.isEventDispatchThread()) {
-            this.updateOnEDT(o, arg);
+        if (o != null && mVClass.isAssignableFrom(o.getClass())) {
+            // all changes of one item are handled the same, coalesce them
+            ViewUpdates.post(this, o, null);
             return;
         }
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                ListView.this.updateOnEDT(o, arg);
-            }
-        });
+        ViewUpdates.post(this, o, arg);
     }
 
+    @Override
     @SuppressWarnings("unchecked")
-    private void updateOnEDT(Observable o, Object arg) {
-        if (o == null || mVClass.isAssignableFrom(o.getClass())) {
+    public void updateOnEDT(Observable o, Object arg) {
+        if (o == null) {
             // render everything again (and update sorting)
             mModel.fireTableRowsUpdated(0, mModel.getRowCount() -1);
+            mRowSorter.sort();
+            return;
+        }
+        if (mVClass.isAssignableFrom(o.getClass())) {
+            this.updateItem((V) o);
             return;
         }
         this.updateOnEDT(arg);
     }
 
+    /** Render one item again and re-sort it if its position changed. */
+    private void updateItem(V value) {
+        Integer row = this.rowIndex().get(value);
+        if (row == null)
+            // not in list (anymore)
+            return;
+
+        mModel.fireTableRowsUpdated(row, row);
+
+        if (!mSearch.isEmpty() || !this.isSorted(row)) {
+            // filter or position may have changed
+            mRowSorter.setSortsOnUpdates(true);
+            mRowSorter.rowsUpdated(row, row);
+            mRowSorter.setSortsOnUpdates(false);
+        }
+    }
+
+    /** Return whether value at model row is still in order with its neighbours. */
+    private boolean isSorted(int modelRow) {
+        int viewRow = mRowSorter.convertRowIndexToView(modelRow);
+        if (viewRow < 0)
+            return false;
+
+        V value = this.getValueAtModelIndex(modelRow);
+        if (viewRow > 0 && this.compare(this.getDisplayedValueAt(viewRow - 1), value) > 0)
+            return false;
+
+        return viewRow >= this.getRowCount() - 1 ||
+                this.compare(value, this.getDisplayedValueAt(viewRow + 1)) <= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<V, Integer> rowIndex() {
+        if (mRowIndex == null) {
+            mRowIndex = new HashMap<>();
+            for (int i = 0; i < mModel.getRowCount(); i++)
+                mRowIndex.put((V) mModel.getValueAt(i, 0), i);
+        }
+        return mRowIndex;
+    }
+
     abstract protected void updateOnEDT(Object arg);
 
     // WebLaf's tooltipmanager blocks mouse events, we need to invoke the tooltip manually.
@@ -32,6 +32,7 @@ import java.awt.Container;
 import java.awt.DefaultFocusTraversalPolicy;
 import java.awt.Dimension;
 import java.awt.Frame;
+import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.Point;
 import java.awt.SystemTray;
@@ -67,6 +68,7 @@ import com.alee.managers.tooltip.TooltipManager;
 import com.alee.utils.SwingUtils;
 import com.alee.utils.WebUtils;
 import org.kontalk.Kontalk;
+import org.kontalk.misc.StartupProfiler;
 import org.kontalk.model.Model;
 import org.kontalk.persistence.Config;
 import org.kontalk.system.Control;
@@ -80,6 +82,8 @@ final class MainFrame extends WebFrame {
 
     enum Tab {CHATS, CONTACT};
 
+    static final String TITLE = "Kontalk Java Client";
+
     private static final int SCROLL_BAR_WIDTH =
             (int) new WebScrollBar(Adjustable.VERTICAL).getPreferredSize().getWidth();
 
@@ -90,6 +94,8 @@ final class MainFrame extends WebFrame {
     private final WebToggleButton mAddGroupButton;
     private final WebToggleButton mAddContactButton;
 
+    private boolean mPainted = false;
+
     MainFrame(View view,
             Model model,
             ListView contactList,
@@ -102,7 +108,7 @@ final class MainFrame extends WebFrame {
         final Config conf = Config.getInstance();
 
         // general view + behaviour
-        this.setTitle("Kontalk Java Client");
+        this.setTitle(TITLE);
         this.setSize(conf.getInt(Config.VIEW_FRAME_WIDTH),
                 conf.getInt(Config.VIEW_FRAME_HEIGHT));
 
@@ -304,6 +310,16 @@ final class MainFrame extends WebFrame {
         this.add(statusBar, BorderLayout.SOUTH);
     }
 
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+
+        if (!mPainted) {
+            mPainted = true;
+            StartupProfiler.end(StartupProfiler.Phase.FIRST_FRAME);
+        }
+    }
+
     public Tab getCurrentTab() {
         return Tab.values()[mTabbedPane.getSelectedIndex()];
     }
@@ -22,6 +22,7 @@ import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.Icon;
 import javax.swing.JComponent;
+import javax.swing.JViewport;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
@@ -41,13 +42,20 @@ import java.awt.Color;
 import java.awt.ComponentOrientation;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Point;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Level;
@@ -92,11 +100,30 @@ final class MessageList extends ListView<KonMessage> {
     private static final Icon CRYPT_WARNING_ICON = Utils.getIcon("ic_msg_crypt_warning.png");
 
     private static final WrapEditorKit FIX_WRAP_KIT = new WrapEditorKit();
+    /** List width is rounded down to multiples of this for text layout. */
+    private static final int WIDTH_BUCKET = 16;
+    private static final int TEXT_SIZE_CACHE_SIZE = 2000;
+    /** Number of newest messages shown first, older ones are added later. */
+    private static final int FIRST_ROWS = 50;
+    private static final int ROWS_PER_STEP = 200;
+    /** Text area size for message ID, shared by all lists. */
+    private static final Map<Integer, TextSize> TEXT_SIZE_CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, TextSize>(100, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, TextSize> eldest) {
+                    return this.size() > TEXT_SIZE_CACHE_SIZE;
+                }
+            });
     private static final WebPopupMenu TEXT_COPY_MENU = Utils.createCopyMenu(false);
 
     private final ChatView mChatView;
     private final Chat mChat;
 
+    private KonMessage mNewest = null;
+    private boolean mInsertScheduled = false;
+    private boolean mDisposed = false;
+    private boolean mScrollDown = false;
+
     private Optional<Background> mBackground = Optional.empty();
 
     MessageList(View view, ChatView chatView, Chat chat) {
@@ -129,6 +156,19 @@ final class MessageList extends ListView<KonMessage> {
         return mChat;
     }
 
+    /** Return and reset if list should be scrolled down when shown. */
+    boolean takeScrollDown() {
+        boolean scrollDown = mScrollDown;
+        mScrollDown = false;
+        return scrollDown;
+    }
+
+    /** Remove all items, the list is not used anymore. */
+    void dispose() {
+        mDisposed = true;
+        this.clearItems();
+    }
+
     Optional<Background> getBG() {
         return mBackground;
     }
@@ -155,14 +195,77 @@ final class MessageList extends ListView<KonMessage> {
         }
     }
 
+    /**
+     * Add new messages. A long chat history is added step by step, newest
+     * messages first, to not block the EDT.
+     */
     private void insertMessages() {
-        boolean newAdded = this.sync(mChat.getMessages().getAll());
-        if (newAdded) {
-            //this.scrollToRow(this.getRowCount() -1);
-            mChatView.setScrollDown();
+        if (mDisposed)
+            return;
+
+        List<KonMessage> messages = new ArrayList<>(mChat.getMessages().getAll());
+        if (messages.isEmpty())
+            return;
+
+        int rows = this.getModel().getRowCount();
+        int count = rows == 0 ? FIRST_ROWS : rows + ROWS_PER_STEP;
+        int from = Math.max(0, messages.size() - count);
+
+        // older rows are added on top, keep distance of view to bottom
+        JViewport viewport = rows > 0 && this.getParent() instanceof JViewport ?
+                (JViewport) this.getParent() :
+                null;
+        int toBottom = viewport == null ? 0 :
+                this.getPreferredSize().height - viewport.getViewPosition().y;
+
+        this.sync(new HashSet<>(messages.subList(from, messages.size())));
+
+        KonMessage newest = messages.get(messages.size() - 1);
+        if (newest != mNewest) {
+            mNewest = newest;
+            if (mChatView.getCurrentChat().orElse(null) == mChat)
+                //this.scrollToRow(this.getRowCount() -1);
+                mChatView.setScrollDown();
+            else
+                mScrollDown = true;
+        } else if (viewport != null) {
+            Point position = viewport.getViewPosition();
+            int y = Math.max(0, this.getPreferredSize().height - toBottom);
+            if (y != position.y)
+                viewport.setViewPosition(new Point(position.x, y));
+        }
+
+        if (from > 0 && !mInsertScheduled) {
+            mInsertScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    mInsertScheduled = false;
+                    MessageList.this.insertMessages();
+                }
+            });
         }
     }
 
+    /**
+     * Add now at least the newest 'rows' messages and all messages in
+     * 'include'. Older messages are still added later.
+     */
+    void insertAtLeast(int rows, Collection<KonMessage> include) {
+        if (mDisposed)
+            return;
+
+        List<KonMessage> messages = new ArrayList<>(mChat.getMessages().getAll());
+        int from = Math.max(0, messages.size() -
+                Math.max(rows, this.getModel().getRowCount()));
+        for (KonMessage message : include) {
+            int index = messages.indexOf(message);
+            if (index >= 0)
+                from = Math.min(from, index);
+        }
+        this.sync(new HashSet<>(messages.subList(from, messages.size())));
+    }
+
     private void setBackground(Chat.ViewSettings s) {
         // simply overwrite
         mBackground = mChatView.createBG(s);
@@ -369,11 +472,12 @@ final class MessageList extends ListView<KonMessage> {
 
             // text in text area
             String text = messageToString(value, mView, false);
-            if (value.getContent().getGroupCommand().isPresent()) {
+            boolean italic = hasGroupCommand || value.isEncrypted();
+            if (hasGroupCommand) {
                 mTextPane.setText(text);
                 mTextPane.setFontStyle(false, true);
             } else {
-                mTextPane.setFontStyle(false, value.isEncrypted());
+                mTextPane.setFontStyle(false, italic);
                 LinkUtils.linkify(mTextPane.getStyledDocument(), text);
             }
 
@@ -553,6 +657,30 @@ final class MessageList extends ListView<KonMessage> {
                 mAttPanel.setStatus(statusText);
             }
 
+            // text layout is expensive, only done if text or width changed
+            int widthBucket = listWidth / WIDTH_BUCKET * WIDTH_BUCKET;
+            TextSize textSize = TEXT_SIZE_CACHE.get(value.getID());
+            if (textSize == null || !textSize.matches(text, italic, widthBucket)) {
+                textSize = new TextSize(text, italic, widthBucket,
+                        this.measureText(widthBucket));
+                if (value.getID() > 0)
+                    TEXT_SIZE_CACHE.put(value.getID(), textSize);
+            }
+            Dimension prefSize = textSize.mSize;
+
+            mTextPane.setSize(prefSize);
+            // textArea does not need this but textPane does, and editorPane
+            // is again totally different; I love Swing
+            mTextPane.setPreferredSize(prefSize);
+
+            // toggle left/right position
+            this.setComponentOrientation(isOut ?
+                    ComponentOrientation.LEFT_TO_RIGHT:
+                    ComponentOrientation.RIGHT_TO_LEFT);
+        }
+
+        /** Preferred size of text area with current text. */
+        private Dimension measureText(int listWidth) {
             // resetting size
             mTextPane.setSize(Short.MAX_VALUE, Short.MAX_VALUE);
             mTextPane.setPreferredSize(null);
@@ -560,8 +688,6 @@ final class MessageList extends ListView<KonMessage> {
             // calculate preferred width
             // NOTE: on the very first call the list width is zero (?)
             int maxWidth = (int)(listWidth * 0.8);
-            mTextPane.setSize(Short.MAX_VALUE, Short.MAX_VALUE);
-            //mTextPane.setText(content); // already done
             int prefWidth = mTextPane.getPreferredSize().width;
 
             // calculate preferred height now with fixed width
@@ -569,17 +695,27 @@ final class MessageList extends ListView<KonMessage> {
             mTextPane.setSize(width, Short.MAX_VALUE);
             int height = mTextPane.getPreferredSize().height;
 
-            Dimension prefSize = new Dimension(width, height);
+            return new Dimension(width, height);
+        }
+    }
 
-            mTextPane.setSize(prefSize);
-            // textArea does not need this but textPane does, and editorPane
-            // is again totally different; I love Swing
-            mTextPane.setPreferredSize(prefSize);
+    /** Cached text area size for a message. */
+    private static final class TextSize {
+        private final String mText;
+        private final boolean mItalic;
+        private final int mWidthBucket;
+        private final Dimension mSize;
+
+        TextSize(String text, boolean italic, int widthBucket, Dimension size) {
+            mText = text;
+            mItalic = italic;
+            mWidthBucket = widthBucket;
+            mSize = size;
+        }
 
-            // toggle left/right position
-            this.setComponentOrientation(isOut ?
-                    ComponentOrientation.LEFT_TO_RIGHT:
-                    ComponentOrientation.RIGHT_TO_LEFT);
+        boolean matches(String text, boolean italic, int widthBucket) {
+            return mWidthBucket == widthBucket && mItalic == italic &&
+                    mText.equals(text);
         }
     }
 
@@ -59,6 +59,8 @@ final class TrayManager implements Observer {
         mView = view;
         mModel = model;
         mMainFrame = mainFrame;
+        // chats are already loaded, no change event for initial count
+        this.updateTitle();
         this.setTray();
     }
 
@@ -108,10 +110,20 @@ final class TrayManager implements Observer {
         if (arg != ChatList.ViewChange.UNREAD)
             return;
 
+        this.updateTitle();
+
         if (mTrayIcon == null)
             return;
 
         mTrayIcon.setImage(getTrayImage());
+        mTrayIcon.setToolTip(getTrayToolTip());
+    }
+
+    private void updateTitle() {
+        int unread = mModel.chats().getUnreadCount();
+        mMainFrame.setTitle(unread > 0 ?
+                MainFrame.TITLE + " (" + unread + ")" :
+                MainFrame.TITLE);
     }
 
     private Image getTrayImage() {
@@ -120,6 +132,13 @@ final class TrayManager implements Observer {
                 NORMAL_TRAY ;
     }
 
+    private String getTrayToolTip() {
+        int unread = mModel.chats().getUnreadCount();
+        return unread > 0 ?
+                "Kontalk (" + unread + ")" :
+                "Kontalk";
+    }
+
     private TrayIcon createTrayIcon() {
         // popup menu outside of frame, officially not supported
         final WebPopupMenu popup = new WebPopupMenu();
@@ -164,7 +183,7 @@ final class TrayManager implements Observer {
             }
         };
 
-        TrayIcon trayIcon = new TrayIcon(this.getTrayImage(), "Kontalk" /*, popup*/);
+        TrayIcon trayIcon = new TrayIcon(this.getTrayImage(), this.getTrayToolTip() /*, popup*/);
         trayIcon.setImageAutoSize(true);
         trayIcon.addMouseListener(listener);
         return trayIcon;
@@ -64,6 +64,9 @@ import org.kontalk.util.Tr;
 public final class View implements Observer {
     private static final Logger LOGGER = Logger.getLogger(View.class.getName());
 
+    /** Number of recent chats prepared in advance on startup. */
+    private static final int WARMUP_CHATS = 4;
+
     static final String KONTALK_SITE = "https://www.kontalk.org";
     static final String KONTALK_RELEASES = "https://github.com/kontalk/desktopclient-java/releases";
 
@@ -216,6 +219,9 @@ public final class View implements Observer {
 
                 if (mModel.chats().isEmpty())
                     mMainFrame.selectTab(MainFrame.Tab.CONTACT);
+
+                // prepare lists of recent chats after main frame is shown
+                mChatView.warmUp(mChatListView.firstChats(WARMUP_CHATS));
             }
         });
     }
@@ -0,0 +1,86 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.kontalk.view;
+
+import javax.swing.SwingUtilities;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Set;
+
+/**
+ * Delivers model notifications from other threads to the EDT.
+ *
+ * Notifications posted before the EDT processes them are coalesced: equal
+ * changes of one model object for one receiver are delivered only once and
+ * all pending changes are delivered in a single EDT task.
+ */
+final class ViewUpdates {
+    /** A view component handling model changes. */
+    interface Receiver {
+        /** Called on EDT. Change argument is the same as of the observer. */
+        void updateOnEDT(Observable o, Object arg);
+    }
+
+    // guarded by PENDING
+    private static final Map<Receiver, Map<Observable, Set<Object>>> PENDING =
+            new LinkedHashMap<>();
+    private static boolean SCHEDULED = false;
+
+    private ViewUpdates() {}
+
+    /**
+     * Handle a model change for a receiver on EDT. Called on EDT the change
+     * is handled immediately.
+     */
+    static void post(Receiver receiver, Observable o, Object arg) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            receiver.updateOnEDT(o, arg);
+            return;
+        }
+
+        synchronized (PENDING) {
+            PENDING.computeIfAbsent(receiver, r -> new LinkedHashMap<>())
+                    .computeIfAbsent(o, k -> new LinkedHashSet<>())
+                    .add(arg);
+            if (SCHEDULED)
+                return;
+            SCHEDULED = true;
+        }
+        SwingUtilities.invokeLater(() -> deliver());
+    }
+
+    private static void deliver() {
+        Map<Receiver, Map<Observable, Set<Object>>> batch;
+        synchronized (PENDING) {
+            batch = new LinkedHashMap<>(PENDING);
+            PENDING.clear();
+            SCHEDULED = false;
+        }
+
+        for (Map.Entry<Receiver, Map<Observable, Set<Object>>> e : batch.entrySet()) {
+            Receiver receiver = e.getKey();
+            for (Map.Entry<Observable, Set<Object>> changes : e.getValue().entrySet()) {
+                for (Object arg : changes.getValue())
+                    receiver.updateOnEDT(changes.getKey(), arg);
+            }
+        }
+    }
+}
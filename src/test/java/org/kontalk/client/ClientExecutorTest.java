@@ -0,0 +1,114 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientExecutorTest {
+
+    private static final long TIMEOUT_SEC = 10;
+
+    /**
+     * Test of cancel method, of class ClientExecutor.
+     */
+    @Test
+    public void testCancel() throws Exception {
+        ClientExecutor executor = new ClientExecutor();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> blocking = executor.submit(ClientExecutor.Lane.STANZA, () -> {
+            running.countDown();
+            return release.await(TIMEOUT_SEC, TimeUnit.SECONDS);
+        }).get();
+        assertTrue(running.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+
+        AtomicBoolean ran = new AtomicBoolean(false);
+        Future<Boolean> waiting = executor.submit(ClientExecutor.Lane.STANZA, () -> {
+            ran.set(true);
+            return true;
+        }).get();
+        Future<Boolean> otherLane = executor.submit(ClientExecutor.Lane.IQ, () -> true).get();
+
+        executor.cancel(ClientExecutor.Lane.STANZA);
+        assertTrue(waiting.isCancelled());
+        // running task is not interrupted
+        assertFalse(blocking.isCancelled());
+
+        release.countDown();
+        assertTrue(blocking.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+        assertTrue(otherLane.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+
+        // lane accepts tasks after cancelling
+        Future<Boolean> next = executor.submit(ClientExecutor.Lane.STANZA, () -> true).get();
+        assertTrue(next.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    /**
+     * Test of call method, of class ClientExecutor, when the task is
+     * cancelled while waiting.
+     */
+    @Test
+    public void testCallCancelled() throws Exception {
+        ClientExecutor executor = new ClientExecutor();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(ClientExecutor.Lane.IQ, () -> {
+            running.countDown();
+            return release.await(TIMEOUT_SEC, TimeUnit.SECONDS);
+        });
+        assertTrue(running.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> result = CompletableFuture.supplyAsync(
+                () -> executor.call(ClientExecutor.Lane.IQ, () -> true, false));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SEC);
+        // task may not be queued yet
+        while (!result.isDone() && System.nanoTime() < deadline) {
+            executor.cancel(ClientExecutor.Lane.IQ);
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertFalse(result.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test of add and toString methods, of class LatencyHistogram.
+     */
+    @Test
+    public void testLatencyHistogram() {
+        ClientExecutor.LatencyHistogram histogram = new ClientExecutor.LatencyHistogram();
+        assertEquals("", histogram.toString());
+
+        histogram.add(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.add(TimeUnit.MILLISECONDS.toNanos(2));
+        histogram.add(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.add(TimeUnit.MILLISECONDS.toNanos(4));
+        histogram.add(TimeUnit.SECONDS.toNanos(20));
+
+        assertEquals("<1ms=1 <4ms=2 <16ms=1 >=16384ms=1", histogram.toString());
+    }
+}
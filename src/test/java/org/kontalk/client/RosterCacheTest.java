@@ -0,0 +1,120 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kontalk.persistence.Database;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RosterCacheTest {
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private Database mDB;
+
+    @Before
+    public void setUp() throws Exception {
+        mDB = new Database(mTempFolder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        mDB.close();
+    }
+
+    /**
+     * Test of addEntry and getEntry methods, of class RosterCache.
+     */
+    @Test
+    public void testAddEntry() {
+        RosterCache cache = new RosterCache(mDB);
+        assertTrue(cache.getEntries().isEmpty());
+        assertEquals("", cache.getRosterVersion());
+
+        assertTrue(cache.addEntry(item("alice", "Alice", "friends", "work"), "v1"));
+        assertEquals("v1", cache.getRosterVersion());
+
+        Item entry = cache.getEntry("alice@example.org");
+        assertEquals("Alice", entry.getName());
+        assertEquals(RosterPacket.ItemType.both, entry.getItemType());
+        assertEquals(2, entry.getGroupNames().size());
+
+        // update
+        assertTrue(cache.addEntry(item("alice", "Alice B."), "v2"));
+        assertEquals("Alice B.", cache.getEntry("alice@example.org").getName());
+        assertEquals(1, cache.getEntries().size());
+        assertEquals("v2", cache.getRosterVersion());
+    }
+
+    /**
+     * Test that entries and version are loaded by a new instance, of class
+     * RosterCache.
+     */
+    @Test
+    public void testPersistence() {
+        RosterCache cache = new RosterCache(mDB);
+        cache.resetEntries(Arrays.asList(
+                item("alice", "Alice", "friends"),
+                item("bob", "Bob")),
+                "v1");
+        cache.removeEntry("bob@example.org", "v2");
+
+        RosterCache loaded = new RosterCache(mDB);
+        assertEquals("v2", loaded.getRosterVersion());
+        assertEquals(1, loaded.getEntries().size());
+        Item entry = loaded.getEntry("alice@example.org");
+        assertEquals("Alice", entry.getName());
+        assertEquals(Collections.singleton("friends"), entry.getGroupNames());
+        assertNull(loaded.getEntry("bob@example.org"));
+    }
+
+    /**
+     * Test of resetEntries method, of class RosterCache.
+     */
+    @Test
+    public void testResetEntries() {
+        RosterCache cache = new RosterCache(mDB);
+        cache.addEntry(item("alice", "Alice"), "v1");
+
+        assertTrue(cache.resetEntries(Arrays.asList(item("bob", "Bob")), "v2"));
+        assertNull(cache.getEntry("alice@example.org"));
+        assertEquals("Bob", cache.getEntry("bob@example.org").getName());
+
+        // version without snapshot is useless
+        assertTrue(cache.resetEntries(Collections.emptyList(), "v3"));
+        assertEquals("", cache.getRosterVersion());
+    }
+
+    private static Item item(String local, String name, String... groups) {
+        Item item = new Item(local + "@example.org", name);
+        item.setItemType(RosterPacket.ItemType.both);
+        for (String group : groups)
+            item.addGroupName(group);
+        return item;
+    }
+}
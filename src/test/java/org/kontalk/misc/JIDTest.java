@@ -0,0 +1,132 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.misc;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JIDTest {
+
+    /**
+     * Test of full method, of class JID.
+     */
+    @Test
+    public void testFull() {
+        JID jid = JID.full("alice@example.org/desktop");
+        assertEquals("alice", jid.local());
+        assertEquals("example.org", jid.domain());
+        assertEquals("alice@example.org/desktop", jid.string());
+        assertTrue(jid.isFull());
+        assertTrue(jid.isValid());
+    }
+
+    /**
+     * Test of bare method, of class JID.
+     */
+    @Test
+    public void testBare() {
+        JID jid = JID.bare("alice@example.org/desktop");
+        assertEquals("alice@example.org", jid.string());
+        assertFalse(jid.isFull());
+
+        assertEquals("bob@example.org", JID.bare("bob", "example.org").string());
+    }
+
+    /**
+     * Test of isValid method, of class JID.
+     */
+    @Test
+    public void testIsValid() {
+        assertTrue(JID.bare("alice@example.org").isValid());
+        assertFalse(JID.bare("@example.org").isValid());
+        assertFalse(JID.bare("").isValid());
+        assertFalse(JID.bare(null).isValid());
+        assertFalse(JID.deleted(42).isValid());
+    }
+
+    /**
+     * Test of isHash method, of class JID.
+     */
+    @Test
+    public void testIsHash() {
+        assertTrue(JID.bare("0123456789abcdef0123456789abcdef01234567@example.org").isHash());
+        assertFalse(JID.bare("alice@example.org").isHash());
+    }
+
+    /**
+     * Test of equals and hashCode methods, of class JID.
+     */
+    @Test
+    public void testEquals() {
+        JID full = JID.full("Alice@Example.org/desktop");
+        JID other = JID.full("alice@example.org/phone");
+        JID bare = JID.bare("ALICE@EXAMPLE.ORG");
+
+        // resource and case are ignored
+        assertEquals(full, other);
+        assertEquals(full, bare);
+        assertEquals(full.hashCode(), other.hashCode());
+        assertEquals(full.hashCode(), bare.hashCode());
+
+        assertNotEquals(full, JID.bare("bob@example.org"));
+        assertNotEquals(full, JID.bare("alice@example.com"));
+        assertNotEquals(full, "alice@example.org");
+
+        Set<JID> set = new HashSet<>();
+        set.add(full);
+        assertTrue(set.contains(bare));
+        assertFalse(set.add(other));
+    }
+
+    /**
+     * Test of interning in the full and bare methods, of class JID.
+     */
+    @Test
+    public void testInterning() {
+        String s = "carol@example.org/desktop";
+        assertSame(JID.full(s), JID.full(s));
+        assertSame(JID.bare(s), JID.bare(s));
+
+        // pools are separate
+        assertTrue(JID.full(s).isFull());
+        assertFalse(JID.bare(s).isFull());
+    }
+
+    /**
+     * Test of toBare method, of class JID.
+     */
+    @Test
+    public void testToBare() {
+        JID full = JID.full("dave@example.org/desktop");
+        JID bare = full.toBare();
+        assertFalse(bare.isFull());
+        assertEquals("dave@example.org", bare.string());
+        assertEquals(full, bare);
+
+        // cached
+        assertSame(bare, full.toBare());
+        // already bare
+        assertSame(bare, bare.toBare());
+    }
+}
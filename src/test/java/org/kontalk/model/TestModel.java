@@ -0,0 +1,80 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.kontalk.misc.JID;
+import org.kontalk.misc.KonException;
+import org.kontalk.persistence.Config;
+import org.kontalk.persistence.Database;
+
+/**
+ * Model for tests. Config and model are process-wide singletons, so the
+ * model is set up once per JVM in a temporary application directory and
+ * shared by all test classes. It is closed and deleted on JVM exit.
+ *
+ * Tests share the model state and must not depend on what other tests
+ * created; use {@link #contact(String)} for new contacts.
+ */
+public final class TestModel {
+
+    private static final String USER_JID = "me@example.org";
+
+    private static final AtomicInteger CONTACT_COUNT = new AtomicInteger();
+
+    private static Model MODEL = null;
+
+    private TestModel() {}
+
+    /** Return the model, set up and loaded on first call. */
+    public static synchronized Model get() throws IOException, KonException {
+        if (MODEL != null)
+            return MODEL;
+
+        Path appDir = Files.createTempDirectory("kontalk_test");
+        Config.initialize(appDir);
+        Database db = new Database(appDir);
+        Model model = Model.setup(db, appDir);
+        if (Model.database() == db) {
+            model.load();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                model.onShutDown();
+                db.close();
+                FileUtils.deleteQuietly(appDir.toFile());
+            }, "Test Model Shutdown"));
+        } else {
+            // already set up by someone else in this JVM
+            db.close();
+            FileUtils.deleteQuietly(appDir.toFile());
+        }
+        model.setUserJID(JID.bare(USER_JID));
+
+        return MODEL = model;
+    }
+
+    /** Create a new contact, the JID is unique within the JVM. */
+    public static Contact contact(String local) {
+        JID jid = JID.bare(local + CONTACT_COUNT.incrementAndGet() + "@example.org");
+        return MODEL.contacts().create(jid, local)
+                .orElseThrow(AssertionError::new);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.model.chat;
+
+import java.util.Arrays;
+import java.util.Optional;
+import org.jivesoftware.smack.packet.Message;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kontalk.model.Contact;
+import org.kontalk.model.Model;
+import org.kontalk.model.TestModel;
+import org.kontalk.model.chat.GroupMetaData.KonGroupData;
+import org.kontalk.model.message.MessageContent;
+import org.kontalk.model.message.ProtoMessage;
+import org.kontalk.util.ClientUtils.MessageIDs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.kontalk.model.TestModel.contact;
+
+public class ChatListTest {
+    private static Model MODEL;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        MODEL = TestModel.get();
+    }
+
+    /**
+     * Test of get and getOrCreate methods for single chats, of class ChatList.
+     */
+    @Test
+    public void testGetSingle() {
+        ChatList chats = MODEL.chats();
+        Contact alice = contact("alice");
+        assertFalse(chats.get(alice, "").isPresent());
+        assertFalse(chats.contains(alice));
+
+        SingleChat chat = chats.getOrCreate(alice);
+        assertSame(chat, chats.get(alice, "").orElse(null));
+        assertSame(chat, chats.getOrCreate(alice));
+        assertTrue(chats.contains(alice));
+    }
+
+    /**
+     * Test of get and getOrCreate methods with thread ID, of class ChatList.
+     */
+    @Test
+    public void testGetSingleWithThread() {
+        ChatList chats = MODEL.chats();
+        Contact bob = contact("bob");
+        SingleChat chat = chats.getOrCreate(bob);
+        SingleChat threadChat = chats.getOrCreate(bob, "thread1");
+
+        assertNotSame(chat, threadChat);
+        assertSame(threadChat, chats.get(bob, "thread1").orElse(null));
+        assertSame(chat, chats.get(bob, "").orElse(null));
+        assertFalse(chats.get(bob, "thread2").isPresent());
+    }
+
+    /**
+     * Test of get method for group chats, of class ChatList.
+     */
+    @Test
+    public void testGetGroup() {
+        ChatList chats = MODEL.chats();
+        Contact carol = contact("carol");
+        Contact me = MODEL.contacts().getMe().orElseThrow(AssertionError::new);
+        KonGroupData gData = new KonGroupData(me.getJID(), "list1");
+        GroupChat chat = chats.createNew(Arrays.asList(
+                new ProtoMember(carol),
+                new ProtoMember(me, ProtoMember.Role.OWNER)),
+                gData, "subject");
+
+        assertSame(chat, chats.get(gData).orElse(null));
+        // found by equal group data
+        assertSame(chat, chats.get(new KonGroupData(me.getJID(), "list1")).orElse(null));
+        assertFalse(chats.get(new KonGroupData(me.getJID(), "list2")).isPresent());
+    }
+
+    /**
+     * Test of delete method, of class ChatList.
+     */
+    @Test
+    public void testDelete() {
+        ChatList chats = MODEL.chats();
+        Contact dave = contact("dave");
+        SingleChat chat = chats.getOrCreate(dave);
+
+        chats.delete(chat);
+        assertFalse(chats.get(dave, "").isPresent());
+        assertFalse(chats.getAll().contains(chat));
+        assertFalse(chats.contains(dave));
+    }
+
+    /**
+     * Test of getUnreadCount and isUnread methods, of class ChatList, and of
+     * the unread counter in class Chat.
+     */
+    @Test
+    public void testUnreadCount() {
+        ChatList chats = MODEL.chats();
+        int unreadChats = chats.getUnreadCount();
+        Contact eve = contact("eve");
+        SingleChat chat = chats.getOrCreate(eve);
+        assertTrue(chat.isRead());
+        assertEquals(0, chat.getUnreadCount());
+
+        addInMessage(chat, eve, "in-1");
+        addInMessage(chat, eve, "in-2");
+        assertFalse(chat.isRead());
+        assertEquals(2, chat.getUnreadCount());
+        assertEquals(unreadChats + 1, chats.getUnreadCount());
+        assertTrue(chats.isUnread());
+
+        // outgoing messages are not counted
+        MODEL.createOutMessage(chat, Arrays.asList(eve), MessageContent.plainText("out"))
+                .orElseThrow(AssertionError::new);
+        assertEquals(2, chat.getUnreadCount());
+
+        chat.setRead();
+        assertTrue(chat.isRead());
+        assertEquals(0, chat.getUnreadCount());
+        assertEquals(unreadChats, chats.getUnreadCount());
+    }
+
+    /**
+     * Test of delete method with an unread chat, of class ChatList.
+     */
+    @Test
+    public void testDeleteUnread() {
+        ChatList chats = MODEL.chats();
+        int unreadChats = chats.getUnreadCount();
+        Contact frank = contact("frank");
+        SingleChat chat = chats.getOrCreate(frank);
+        addInMessage(chat, frank, "in-1");
+        assertEquals(unreadChats + 1, chats.getUnreadCount());
+
+        chats.delete(chat);
+        assertEquals(unreadChats, chats.getUnreadCount());
+    }
+
+    private static void addInMessage(Chat chat, Contact contact, String xmppID) {
+        Message m = new Message();
+        m.setFrom(contact.getJID().string() + "/res");
+        m.setStanzaId(xmppID);
+        MODEL.createInMessage(
+                new ProtoMessage(contact, MessageContent.plainText("text " + xmppID)),
+                chat, MessageIDs.from(m), Optional.empty())
+                .orElseThrow(AssertionError::new);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.model.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kontalk.model.Contact;
+import org.kontalk.model.Model;
+import org.kontalk.model.TestModel;
+import org.kontalk.model.chat.GroupMetaData.KonGroupData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.kontalk.model.TestModel.contact;
+
+public class GroupChatTest {
+    private static Model MODEL;
+    private static Contact ME;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        MODEL = TestModel.get();
+        ME = MODEL.contacts().getMe().orElseThrow(AssertionError::new);
+    }
+
+    /**
+     * Test of getAllMembers, getAllContacts and getValidContacts methods, of
+     * class GroupChat.
+     */
+    @Test
+    public void testMembers() {
+        Contact alice = contact("alice");
+        Contact bob = contact("bob");
+        GroupChat chat = group("group1", alice, bob);
+
+        assertEquals(3, chat.getAllMembers().size());
+        assertEquals(Arrays.asList(alice, bob, ME), chat.getAllContacts());
+        assertEquals(Arrays.asList(alice, bob), chat.getValidContacts());
+        assertTrue(chat.containsMe());
+        assertTrue(chat.isAdministratable());
+        assertTrue(chat.isValid());
+    }
+
+    /**
+     * Test that returned member lists can't be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMembersUnmodifiable() {
+        GroupChat chat = group("group2", contact("carol"));
+        chat.getAllMembers().clear();
+    }
+
+    /**
+     * Test of applyGroupChanges method, of class GroupChat. Lists returned
+     * before the change are not affected.
+     */
+    @Test
+    public void testApplyGroupChanges() {
+        Contact dave = contact("dave");
+        Contact eve = contact("eve");
+        GroupChat chat = group("group3", dave);
+        List<Contact> before = chat.getValidContacts();
+
+        chat.applyGroupChanges(Arrays.asList(new ProtoMember(eve)),
+                Collections.emptyList(), "");
+        assertEquals(Arrays.asList(dave), before);
+        assertEquals(Arrays.asList(dave, eve), chat.getValidContacts());
+        assertEquals(3, chat.getAllMembers().size());
+
+        chat.applyGroupChanges(Collections.emptyList(),
+                Arrays.asList(new ProtoMember(dave)), "");
+        assertEquals(Arrays.asList(eve), chat.getValidContacts());
+        assertEquals(2, chat.getAllMembers().size());
+    }
+
+    /**
+     * Test of canSendEncrypted method, of class GroupChat. Updated when a
+     * member gets a key.
+     */
+    @Test
+    public void testCanSendEncrypted() {
+        Contact frank = contact("frank");
+        Contact grace = contact("grace");
+        GroupChat chat = group("group4", frank, grace);
+        assertFalse(chat.canSendEncrypted());
+
+        frank.setKey(new byte[]{1}, "aa");
+        assertFalse(chat.canSendEncrypted());
+
+        grace.setKey(new byte[]{2}, "bb");
+        assertTrue(chat.canSendEncrypted());
+    }
+
+    /**
+     * Test of getValidContacts method with a deleted member contact, of
+     * class GroupChat.
+     */
+    @Test
+    public void testDeletedContact() {
+        Contact heidi = contact("heidi");
+        Contact ivan = contact("ivan");
+        GroupChat chat = group("group5", heidi, ivan);
+
+        MODEL.contacts().delete(ivan);
+        assertEquals(Arrays.asList(heidi), chat.getValidContacts());
+        assertEquals(3, chat.getAllContacts().size());
+    }
+
+    private static GroupChat group(String id, Contact... contacts) {
+        List<ProtoMember> members = new ArrayList<>();
+        for (Contact contact : contacts)
+            members.add(new ProtoMember(contact));
+        members.add(new ProtoMember(ME, ProtoMember.Role.OWNER));
+        return MODEL.chats().createNew(members, new KonGroupData(ME.getJID(), id), "");
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.system;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.sig.KeyFlags;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyEncryptorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.encoders.Hex;
+import org.jivesoftware.smack.packet.Presence;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import org.kontalk.client.HTTPFileClient;
+import org.kontalk.crypto.PGPUtils;
+import org.kontalk.misc.JID;
+import org.kontalk.misc.ViewEvent;
+import org.kontalk.model.Contact;
+import org.kontalk.model.Model;
+import org.kontalk.model.chat.Chat;
+import org.kontalk.model.chat.GroupChat;
+import org.kontalk.model.message.KonMessage;
+import org.kontalk.model.message.OutMessage;
+import org.kontalk.persistence.Config;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test harness. Replays traffic scenarios against a headless client
+ * connected to a local stand-in XMPP endpoint and reports throughput and
+ * latency percentiles.
+ *
+ * Roster, offline messages and group messages go over the XMPP stream, the
+ * presence storm is injected at the handler method the listener calls.
+ * Group members get public keys, so group messages are encrypted like in
+ * production. Attachments are transferred to a local stand-in HTTP server.
+ *
+ * Disabled by default, run with
+ * {@code gradle test --tests org.kontalk.system.LoadTest -Dkontalk.loadtest=true}.
+ * Scenario sizes can be set with the "kontalk.loadtest.*" properties below.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LoadTest {
+    private static final Logger LOGGER = Logger.getLogger(LoadTest.class.getName());
+
+    @ClassRule
+    public static TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+    private static final int CONTACTS = Integer.getInteger("kontalk.loadtest.contacts", 500);
+    private static final int PRESENCES = Integer.getInteger("kontalk.loadtest.presences", 20000);
+    private static final int MESSAGES = Integer.getInteger("kontalk.loadtest.messages", 2000);
+    private static final int GROUP_SIZE = Integer.getInteger("kontalk.loadtest.group_size", 200);
+    private static final int GROUP_MESSAGES = Integer.getInteger("kontalk.loadtest.group_messages", 200);
+    private static final int ATTACHMENTS = Integer.getInteger("kontalk.loadtest.attachments", 50);
+    private static final int ATTACHMENT_KB = Integer.getInteger("kontalk.loadtest.attachment_kb", 256);
+    private static final int RESUME_MESSAGES = Integer.getInteger("kontalk.loadtest.resume_messages", 50);
+
+    private static final String DOMAIN = "load.test";
+    private static final String HOST = "127.0.0.1";
+    private static final JID USER_JID = JID.bare("me@" + DOMAIN);
+    private static final String USER_RESOURCE = "load";
+    private static final char[] PASSWORD = "load test".toCharArray();
+
+    private static final int KEY_SIZE = 2048;
+    /** Distinct key rings shared by the group members. */
+    private static final int MEMBER_KEYS = 4;
+    private static final long TIMEOUT_SEC = 120;
+    /** Time for pending messages scheduled on reconnect to be send. */
+    private static final long RESEND_WAIT_MS = 3000;
+
+    private static Control CONTROL;
+    private static Model MODEL;
+    private static HttpServer HTTP_SERVER;
+    private static LocalXMPPServer XMPP_SERVER;
+    private static final Map<String, byte[]> FILES = new ConcurrentHashMap<>();
+
+    private static final CountDownLatch CONNECTED = new CountDownLatch(1);
+    private static volatile Control.Status STATUS = null;
+    private static final CountDownLatch ROSTER_APPLIED = new CountDownLatch(1);
+    private static volatile long ROSTER_APPLIED_TIME = 0;
+
+    // set while a message burst is received
+    private static volatile Stats BURST_STATS = null;
+    private static volatile long BURST_START = 0;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Assume.assumeTrue("load test disabled", Boolean.getBoolean("kontalk.loadtest"));
+
+        PGPUtils.registerProvider();
+
+        Path appDir = TEMP_FOLDER.newFolder("app_dir").toPath();
+        CONTROL = new Control(appDir);
+        // already set up by control, returns the same instance
+        MODEL = Model.setup(null, appDir);
+
+        Map<String, String> roster = new HashMap<>();
+        for (int i = 0; i < CONTACTS; i++)
+            roster.put(jid(i).string(), "Contact " + i);
+        KeyPair serverKey = rsaKeyPair();
+        XMPP_SERVER = new LocalXMPPServer(HOST, USER_JID.string() + "/" + USER_RESOURCE,
+                roster, serverContext(serverKey, selfSigned(serverKey)));
+
+        Config config = Config.getInstance();
+        config.setProperty(Config.SERV_HOST, HOST);
+        config.setProperty(Config.SERV_PORT, XMPP_SERVER.getPort());
+        config.setProperty(Config.SERV_CERT_VALIDATION, false);
+        config.setProperty(Config.MAIN_CONNECT_STARTUP, true);
+
+        byte[] privateKey = keyRing("Load Test <" + USER_JID.string() + ">")
+                .generateSecretKeyRing().getEncoded();
+        MODEL.account().setAccount(privateKey, PASSWORD);
+
+        CONTROL.getViewControl().addObserver((o, arg) -> {
+            if (arg instanceof ViewEvent.StatusChange) {
+                Control.Status status = ((ViewEvent.StatusChange) arg).status;
+                if (status == Control.Status.CONNECTED || status == Control.Status.FAILED ||
+                        status == Control.Status.ERROR) {
+                    STATUS = status;
+                    CONNECTED.countDown();
+                }
+            } else if (arg instanceof ViewEvent.NewMessage) {
+                Stats stats = BURST_STATS;
+                if (stats != null)
+                    stats.record(BURST_START, System.nanoTime());
+            }
+        });
+        MODEL.contacts().addObserver((o, arg) -> {
+            if (ROSTER_APPLIED.getCount() > 0 &&
+                    MODEL.contacts().getAll(true, true).size() == CONTACTS + 1) {
+                ROSTER_APPLIED_TIME = System.nanoTime();
+                ROSTER_APPLIED.countDown();
+            }
+        });
+
+        HTTP_SERVER = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+        HTTP_SERVER.createContext("/", LoadTest::handleHTTP);
+        HTTP_SERVER.start();
+
+        // connects on startup
+        CONTROL.launch(false);
+        assertTrue("no connection status", CONNECTED.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+        assertEquals(Control.Status.CONNECTED, STATUS);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (CONTROL != null)
+            CONTROL.shutDown(false);
+        if (XMPP_SERVER != null)
+            XMPP_SERVER.stop();
+        if (HTTP_SERVER != null)
+            HTTP_SERVER.stop(0);
+    }
+
+    /** Initial roster with all contacts from the server, like on first login. */
+    @Test
+    public void testA_RosterLoad() throws InterruptedException {
+        assertTrue("roster not applied", ROSTER_APPLIED.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+
+        Stats stats = new Stats("roster load", 1);
+        stats.record(XMPP_SERVER.getRosterSent(), ROSTER_APPLIED_TIME);
+        stats.report();
+
+        // plus user contact
+        assertEquals(CONTACTS + 1, MODEL.contacts().getAll(true, true).size());
+    }
+
+    /** Presence flood after login, every contact with changing resources. */
+    @Test
+    public void testB_PresenceStorm() {
+        RosterHandler handler = CONTROL.getRosterHandler();
+        Stats stats = new Stats("presence storm", PRESENCES);
+        for (int i = 0; i < PRESENCES; i++) {
+            JID from = JID.full(jid(i % CONTACTS).string() + "/res" + (i % 3));
+            Presence.Type type = i % 5 == 0 ?
+                    Presence.Type.unavailable :
+                    Presence.Type.available;
+            stats.run(() -> handler.onPresenceUpdate(from, type, Optional.empty()));
+        }
+        stats.report();
+    }
+
+    /**
+     * Offline messages delivered at once after login. Latency is measured
+     * from writing the burst until each message is added to the model.
+     */
+    @Test
+    public void testC_OfflineBurst() throws Exception {
+        List<String> stanzas = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            stanzas.add("<message type='chat' id='burst-" + i + "'"
+                    + " from='" + jid(i % CONTACTS).string() + "/res'"
+                    + " to='" + USER_JID.string() + "/" + USER_RESOURCE + "'>"
+                    + "<body>offline message " + i + "</body></message>");
+        }
+
+        Stats stats = new Stats("offline message burst", MESSAGES);
+        BURST_START = System.nanoTime();
+        BURST_STATS = stats;
+        try {
+            XMPP_SERVER.push(stanzas);
+            waitFor(() -> stats.count() >= MESSAGES);
+        } finally {
+            BURST_STATS = null;
+        }
+        stats.report();
+
+        assertEquals(MESSAGES, stats.count());
+        assertTrue(MODEL.chats().getUnreadCount() > 0);
+    }
+
+    /** Sending encrypted messages into one large group chat. */
+    @Test
+    public void testD_LargeGroup() throws Exception {
+        List<PGPPublicKeyRing> keyRings = new ArrayList<>(MEMBER_KEYS);
+        for (int i = 0; i < MEMBER_KEYS; i++)
+            keyRings.add(keyRing("Member " + i + " <member" + i + "@" + DOMAIN + ">")
+                    .generatePublicKeyRing());
+
+        int size = Math.min(GROUP_SIZE, CONTACTS);
+        List<Contact> members = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Contact contact = MODEL.contacts().get(jid(i)).orElseThrow(AssertionError::new);
+            PGPPublicKeyRing keyRing = keyRings.get(i % keyRings.size());
+            contact.setKey(keyRing.getEncoded(),
+                    Hex.toHexString(keyRing.getPublicKey().getFingerprint()));
+            contact.setEncrypted(true);
+            members.add(contact);
+        }
+
+        Control.ViewControl viewControl = CONTROL.getViewControl();
+        GroupChat chat = viewControl.createGroupChat(members, "load test")
+                .orElseThrow(AssertionError::new);
+        assertTrue(chat.isSendEncrypted());
+        int received = XMPP_SERVER.getReceivedMessages();
+
+        Stats stats = new Stats("large group send", GROUP_MESSAGES);
+        for (int i = 0; i < GROUP_MESSAGES; i++) {
+            String text = "group message " + i;
+            stats.run(() -> viewControl.sendText(chat, text));
+        }
+        stats.report();
+
+        // sent status is set when the server acknowledged the stanza
+        waitFor(() -> chat.getMessages().getPending().isEmpty());
+
+        List<OutMessage> messages = chat.getMessages().getAll().stream()
+                .filter(m -> m instanceof OutMessage &&
+                        m.getContent().getPlainText().startsWith("group message "))
+                .map(m -> (OutMessage) m)
+                .collect(Collectors.toList());
+        assertEquals(GROUP_MESSAGES, messages.size());
+        for (OutMessage message : messages) {
+            assertEquals(KonMessage.Status.SENT, message.getStatus());
+            assertTrue(message.getContent().getEncryptedData().isPresent());
+            assertTrue(message.getCoderStatus().getErrors().isEmpty());
+        }
+        // one multicast stanza per message
+        assertTrue(XMPP_SERVER.getReceivedMessages() - received >= GROUP_MESSAGES);
+
+        Chat found = MODEL.chats().get(chat.getGroupData()).orElse(null);
+        assertEquals(chat, found);
+    }
+
+    /** Attachment upload and download through the stand-in server. */
+    @Test
+    public void testE_AttachmentFlood() throws Exception {
+        KeyPair keyPair = rsaKeyPair();
+        HTTPFileClient client = new HTTPFileClient(keyPair.getPrivate(),
+                selfSigned(keyPair), false);
+
+        byte[] data = new byte[ATTACHMENT_KB * 1024];
+        new Random(42).nextBytes(data);
+        File file = TEMP_FOLDER.newFile("attachment.dat");
+        Files.write(file.toPath(), data);
+        Path downloadDir = TEMP_FOLDER.newFolder("downloads").toPath();
+
+        String base = "http://" + HOST + ":" + HTTP_SERVER.getAddress().getPort() + "/";
+        Stats upload = new Stats("attachment upload", ATTACHMENTS);
+        Stats download = new Stats("attachment download", ATTACHMENTS);
+        for (int i = 0; i < ATTACHMENTS; i++) {
+            URI url = URI.create(base + "att" + i + ".dat");
+            upload.run(() -> client.upload(file, url, "application/octet-stream", false));
+            download.run(() -> client.download(url, downloadDir, p -> {}, false));
+        }
+        upload.report();
+        download.report();
+
+        assertEquals(ATTACHMENTS, downloadDir.toFile().list().length);
+    }
+
+    /**
+     * Messages written but not acknowledged when the connection is lost are
+     * send again once after the stream is resumed, not twice.
+     */
+    @Test
+    public void testF_StreamResumption() throws Exception {
+        Contact contact = MODEL.contacts().get(jid(CONTACTS - 1))
+                .orElseThrow(AssertionError::new);
+        contact.setEncrypted(false);
+        Control.ViewControl viewControl = CONTROL.getViewControl();
+        Chat chat = viewControl.getOrCreateSingleChat(contact);
+
+        XMPP_SERVER.setLoseMessages(true);
+        int lost = XMPP_SERVER.getLostMessages();
+        for (int i = 0; i < RESUME_MESSAGES; i++)
+            viewControl.sendText(chat, "resume message " + i);
+        waitFor(() -> XMPP_SERVER.getLostMessages() - lost >= RESUME_MESSAGES);
+        assertEquals(RESUME_MESSAGES, chat.getMessages().getPending().size());
+
+        Stats stats = new Stats("stream resumption", 1);
+        XMPP_SERVER.setLoseMessages(false);
+        XMPP_SERVER.dropConnection();
+        waitFor(() -> STATUS == Control.Status.ERROR);
+        long start = System.nanoTime();
+        viewControl.connect();
+        waitFor(() -> STATUS == Control.Status.CONNECTED);
+        stats.record(start, waitFor(() -> chat.getMessages().getPending().isEmpty()));
+        stats.report();
+        assertEquals(1, XMPP_SERVER.getResumed());
+
+        // outbox would send after Smack resent the unacknowledged stanzas
+        Thread.sleep(RESEND_WAIT_MS);
+        List<KonMessage> messages = chat.getMessages().getAll().stream()
+                .filter(m -> m.getContent().getPlainText().startsWith("resume message "))
+                .collect(Collectors.toList());
+        assertEquals(RESUME_MESSAGES, messages.size());
+        for (KonMessage message : messages) {
+            assertEquals(KonMessage.Status.SENT, message.getStatus());
+            assertEquals(1, XMPP_SERVER.getReceivedCount(message.getXMPPID()));
+        }
+    }
+
+    private static JID jid(int i) {
+        return JID.bare("contact" + i + "@" + DOMAIN);
+    }
+
+    /** Stand-in upload server: stores PUT data, returns it for GET. */
+    private static void handleHTTP(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring(1);
+        switch (exchange.getRequestMethod()) {
+            case "PUT":
+                FILES.put(name, IOUtils.toByteArray(exchange.getRequestBody()));
+                exchange.sendResponseHeaders(200, -1);
+                break;
+            case "GET":
+                byte[] data = FILES.get(name);
+                if (data == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    break;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                exchange.getResponseHeaders().add("Content-Disposition",
+                        "attachment; filename=\"" + name + "\"");
+                exchange.sendResponseHeaders(200, data.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(data);
+                }
+                break;
+            default:
+                exchange.sendResponseHeaders(405, -1);
+        }
+        exchange.close();
+    }
+
+    /** Wait until the condition is true, return the time it was seen. */
+    private static long waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SEC);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                throw new AssertionError("timeout");
+            Thread.sleep(5);
+        }
+        return System.nanoTime();
+    }
+
+    private static KeyPair rsaKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA", PGPUtils.PROVIDER);
+        generator.initialize(KEY_SIZE);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Key ring with a master key for signing and an encryption subkey, like
+     * the legacy keys the client still accepts.
+     */
+    private static PGPKeyRingGenerator keyRing(String userID) throws Exception {
+        Date now = new Date();
+        PGPKeyPair masterKey = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKeyPair(), now);
+        PGPKeyPair encryptKey = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, rsaKeyPair(), now);
+
+        PGPSignatureSubpacketGenerator masterFlags = new PGPSignatureSubpacketGenerator();
+        masterFlags.setKeyFlags(false, KeyFlags.CERTIFY_OTHER | KeyFlags.SIGN_DATA);
+        PGPSignatureSubpacketGenerator encryptFlags = new PGPSignatureSubpacketGenerator();
+        encryptFlags.setKeyFlags(false, KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE);
+
+        PGPDigestCalculator sha1Calc = new JcaPGPDigestCalculatorProviderBuilder()
+                .build().get(HashAlgorithmTags.SHA1);
+        PGPKeyRingGenerator generator = new PGPKeyRingGenerator(
+                PGPSignature.POSITIVE_CERTIFICATION, masterKey, userID, sha1Calc,
+                masterFlags.generate(), null,
+                new JcaPGPContentSignerBuilder(PGPPublicKey.RSA_GENERAL, HashAlgorithmTags.SHA256)
+                        .setProvider(PGPUtils.PROVIDER),
+                new JcePBESecretKeyEncryptorBuilder(PGPEncryptedData.AES_256, sha1Calc)
+                        .setProvider(PGPUtils.PROVIDER).build(PASSWORD));
+        generator.addSubKey(encryptKey, encryptFlags.generate(), null);
+        return generator;
+    }
+
+    private static SSLContext serverContext(KeyPair keyPair, X509Certificate cert)
+            throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("server", keyPair.getPrivate(), PASSWORD,
+                new Certificate[]{cert});
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+                KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+
+    /** Certificate valid for the test domain and the loopback address. */
+    private static X509Certificate selfSigned(KeyPair keyPair) throws Exception {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+            Security.addProvider(new BouncyCastleProvider());
+
+        X500Name name = new X500Name("CN=" + DOMAIN);
+        long now = System.currentTimeMillis();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name,
+                BigInteger.valueOf(now), new Date(now), new Date(now + TimeUnit.DAYS.toMillis(1)),
+                name, keyPair.getPublic());
+        builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(
+                new GeneralName[]{
+                    new GeneralName(GeneralName.dNSName, DOMAIN),
+                    new GeneralName(GeneralName.iPAddress, HOST)}));
+        return new JcaX509CertificateConverter().getCertificate(builder.build(
+                new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /** Latency recorder for one scenario. */
+    private static final class Stats {
+        private final String mName;
+        private final long[] mNanos;
+        private int mCount = 0;
+        private long mStart = 0;
+        private long mEnd = 0;
+
+        Stats(String name, int size) {
+            mName = name;
+            mNanos = new long[size];
+        }
+
+        void run(Operation op) {
+            long start = System.nanoTime();
+            try {
+                op.run();
+            } catch (Exception ex) {
+                throw new AssertionError(mName + " failed", ex);
+            }
+            this.record(start, System.nanoTime());
+        }
+
+        synchronized void record(long start, long end) {
+            if (mCount == mNanos.length)
+                return;
+            if (mCount == 0 || start < mStart)
+                mStart = start;
+            mEnd = Math.max(mEnd, end);
+            mNanos[mCount++] = end - start;
+        }
+
+        synchronized int count() {
+            return mCount;
+        }
+
+        synchronized void report() {
+            long[] sorted = Arrays.copyOf(mNanos, mCount);
+            Arrays.sort(sorted);
+            double seconds = (mEnd - mStart) / 1e9;
+            LOGGER.info(String.format(
+                    "%-22s n=%6d  %8.1f ops/s  p50=%7.2fms  p90=%7.2fms  p99=%7.2fms  max=%7.2fms",
+                    mName, mCount, mCount / Math.max(seconds, 1e-9),
+                    percentile(sorted, 50), percentile(sorted, 90),
+                    percentile(sorted, 99), percentile(sorted, 100)));
+        }
+
+        private static double percentile(long[] sorted, int p) {
+            if (sorted.length == 0)
+                return 0;
+            int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.system;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Minimal stand-in XMPP endpoint for load testing, accepts one client at a
+ * time on localhost.
+ *
+ * Supports only what the client needs for a session: required STARTTLS,
+ * SASL EXTERNAL (accepted without checks), resource binding, stream
+ * management with acks and resumption, a static roster and server discovery announcing
+ * multicast (XEP-0033). Every other IQ request is answered with an error.
+ * Stanzas can be pushed to the client with {@link #push(List)}.
+ */
+final class LocalXMPPServer {
+    private static final Logger LOGGER = Logger.getLogger(LocalXMPPServer.class.getName());
+
+    private static final String NS_TLS = "urn:ietf:params:xml:ns:xmpp-tls";
+    private static final String NS_SASL = "urn:ietf:params:xml:ns:xmpp-sasl";
+    private static final String NS_BIND = "urn:ietf:params:xml:ns:xmpp-bind";
+    private static final String NS_SM = "urn:xmpp:sm:3";
+    private static final String NS_ROSTER = "jabber:iq:roster";
+    private static final String NS_DISCO_INFO = "http://jabber.org/protocol/disco#info";
+    private static final String NS_DISCO_ITEMS = "http://jabber.org/protocol/disco#items";
+    private static final String NS_ADDRESS = "http://jabber.org/protocol/address";
+
+    private enum Next { CONTINUE, START_TLS, RESTART, CLOSE }
+
+    private final String mServiceName;
+    private final String mUserJID;
+    private final Map<String, String> mRoster;
+    private final SSLContext mSSLContext;
+    private final ServerSocket mServerSocket;
+    private final Thread mThread;
+
+    private final Object mWriteLock = new Object();
+    private volatile Writer mWriter = null;
+    private volatile Socket mSocket = null;
+
+    private final AtomicInteger mReceivedMessages = new AtomicInteger();
+    // times each message ID was received
+    private final Map<String, Integer> mMessageIDs = new ConcurrentHashMap<>();
+    private volatile boolean mLoseMessages = false;
+    private final AtomicInteger mLostMessages = new AtomicInteger();
+    private final AtomicInteger mResumed = new AtomicInteger();
+    private volatile long mRosterSent = 0;
+
+    // stream management session, kept if the connection is lost without
+    // closing the stream; only used by server thread
+    private int mSessionCount = 0;
+    private String mSessionID = "";
+    private long mHandled = 0;
+
+    // per connection, only used by server thread
+    private int mStreamCount = 0;
+    private boolean mSecure = false;
+    private boolean mAuthenticated = false;
+    private boolean mSMEnabled = false;
+
+    /**
+     * Create and start the endpoint.
+     *
+     * @param serviceName the service name the client connects to
+     * @param userJID full JID bound to the client
+     * @param roster roster items, bare JID to name
+     * @param sslContext server context for STARTTLS
+     */
+    LocalXMPPServer(String serviceName, String userJID, Map<String, String> roster,
+            SSLContext sslContext) throws IOException {
+        mServiceName = serviceName;
+        mUserJID = userJID;
+        mRoster = new HashMap<>(roster);
+        mSSLContext = sslContext;
+        mServerSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+
+        mThread = new Thread(this::acceptLoop, "Local XMPP Server");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /** Number of message stanzas received from the client. */
+    int getReceivedMessages() {
+        return mReceivedMessages.get();
+    }
+
+    /** Number of times a message stanza with this ID was received. */
+    int getReceivedCount(String messageID) {
+        return mMessageIDs.getOrDefault(messageID, 0);
+    }
+
+    /** Number of message stanzas dropped while losing messages. */
+    int getLostMessages() {
+        return mLostMessages.get();
+    }
+
+    /** Number of streams resumed by the client. */
+    int getResumed() {
+        return mResumed.get();
+    }
+
+    /**
+     * Simulate messages lost in transit: message stanzas from the client are
+     * neither handled nor acknowledged.
+     */
+    void setLoseMessages(boolean lose) {
+        mLoseMessages = lose;
+    }
+
+    /** Close the client connection without closing the stream. */
+    void dropConnection() throws IOException {
+        Socket socket = mSocket;
+        if (socket != null)
+            socket.close();
+    }
+
+    /** System nano time the roster was last sent, 0 if never. */
+    long getRosterSent() {
+        return mRosterSent;
+    }
+
+    /** Write stanzas to the connected client, all at once. */
+    void push(List<String> stanzas) throws IOException {
+        synchronized (mWriteLock) {
+            Writer writer = mWriter;
+            if (writer == null)
+                throw new IOException("no client connected");
+
+            for (String stanza : stanzas)
+                writer.write(stanza);
+            writer.flush();
+        }
+    }
+
+    void stop() {
+        try {
+            mServerSocket.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "can't close server socket", ex);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            try (Socket socket = mServerSocket.accept()) {
+                mSocket = socket;
+                this.serve(socket);
+            } catch (IOException | XmlPullParserException ex) {
+                if (!mServerSocket.isClosed() && !mSocket.isClosed())
+                    LOGGER.log(Level.WARNING, "client connection failed", ex);
+            } finally {
+                synchronized (mWriteLock) {
+                    mWriter = null;
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, XmlPullParserException {
+        mStreamCount = 0;
+        mSecure = false;
+        mAuthenticated = false;
+        mSMEnabled = false;
+
+        Socket current = socket;
+        Reader reader = this.open(current);
+        while (true) {
+            Next next = this.readStream(reader);
+            switch (next) {
+                case START_TLS:
+                    SSLSocket sslSocket = (SSLSocket) mSSLContext.getSocketFactory()
+                            .createSocket(current, current.getInetAddress().getHostAddress(),
+                                    current.getPort(), true);
+                    sslSocket.setUseClientMode(false);
+                    sslSocket.startHandshake();
+                    current = sslSocket;
+                    reader = this.open(current);
+                    mSecure = true;
+                    break;
+                case RESTART:
+                    // same transport, new parser for the new stream
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private Reader open(Socket socket) throws IOException {
+        synchronized (mWriteLock) {
+            mWriter = new BufferedWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+        return new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /** Read one stream until it is closed or must be restarted. */
+    private Next readStream(Reader reader) throws IOException, XmlPullParserException {
+        XmlPullParser parser = PacketParserUtils.newXmppParser(reader);
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.END_DOCUMENT)
+                return Next.CLOSE;
+
+            if (event == XmlPullParser.END_TAG && parser.getDepth() == 1) {
+                // client closed stream, session can't be resumed
+                mSessionID = "";
+                this.write("</stream:stream>");
+                return Next.CLOSE;
+            }
+
+            if (event != XmlPullParser.START_TAG)
+                continue;
+
+            if (parser.getDepth() == 1) {
+                this.openStream();
+                continue;
+            }
+
+            Next next = this.handle(Element.read(parser));
+            if (next != Next.CONTINUE)
+                return next;
+        }
+    }
+
+    private void openStream() throws IOException {
+        String features;
+        if (!mSecure) {
+            features = "<starttls xmlns='" + NS_TLS + "'><required/></starttls>";
+        } else if (!mAuthenticated) {
+            features = "<mechanisms xmlns='" + NS_SASL + "'>"
+                    + "<mechanism>EXTERNAL</mechanism></mechanisms>";
+        } else {
+            features = "<bind xmlns='" + NS_BIND + "'/><sm xmlns='" + NS_SM + "'/>";
+        }
+
+        this.write("<?xml version='1.0' encoding='UTF-8'?>"
+                + "<stream:stream xmlns='jabber:client'"
+                + " xmlns:stream='http://etherx.jabber.org/streams'"
+                + " from='" + mServiceName + "' id='load-" + (++mStreamCount) + "'"
+                + " version='1.0' xml:lang='en'>"
+                + "<stream:features>" + features + "</stream:features>");
+    }
+
+    private Next handle(Element element) throws IOException {
+        switch (element.name) {
+            case "starttls":
+                this.write("<proceed xmlns='" + NS_TLS + "'/>");
+                return Next.START_TLS;
+            case "auth":
+                this.write("<success xmlns='" + NS_SASL + "'/>");
+                mAuthenticated = true;
+                return Next.RESTART;
+            case "enable":
+                mSMEnabled = true;
+                mSessionID = "load-sm-" + (++mSessionCount);
+                mHandled = 0;
+                this.write("<enabled xmlns='" + NS_SM + "' id='" + mSessionID + "'"
+                        + " resume='true' max='300'/>");
+                return Next.CONTINUE;
+            case "resume":
+                if (mSessionID.isEmpty() || !element.attr("previd").equals(mSessionID)) {
+                    this.write("<failed xmlns='" + NS_SM + "'>"
+                            + "<item-not-found xmlns='urn:ietf:params:xml:ns:xmpp-stanzas'/>"
+                            + "</failed>");
+                    return Next.CONTINUE;
+                }
+                // stanzas sent by server are not resent, client h is ignored
+                mSMEnabled = true;
+                mResumed.incrementAndGet();
+                this.write("<resumed xmlns='" + NS_SM + "' previd='" + mSessionID + "'"
+                        + " h='" + mHandled + "'/>");
+                return Next.CONTINUE;
+            case "r":
+                this.writeAck();
+                return Next.CONTINUE;
+            case "message":
+                if (mLoseMessages) {
+                    mLostMessages.incrementAndGet();
+                    return Next.CONTINUE;
+                }
+                mHandled++;
+                mReceivedMessages.incrementAndGet();
+                mMessageIDs.merge(element.attr("id"), 1, Integer::sum);
+                // acknowledge right away, client may not request it
+                this.writeAck();
+                return Next.CONTINUE;
+            case "presence":
+                mHandled++;
+                return Next.CONTINUE;
+            case "iq":
+                mHandled++;
+                this.handleIQ(element);
+                return Next.CONTINUE;
+            default:
+                // acks from client and anything unknown
+                return Next.CONTINUE;
+        }
+    }
+
+    private void handleIQ(Element iq) throws IOException {
+        String type = iq.attr("type");
+        if (!type.equals("get") && !type.equals("set"))
+            return;
+
+        String to = iq.attr("to");
+        boolean toServer = to.isEmpty() || to.equals(mServiceName);
+        Element child = iq.children.isEmpty() ? null : iq.children.get(0);
+        String ns = child == null ? "" : child.namespace;
+
+        if (ns.equals(NS_BIND)) {
+            this.writeResult(iq, "<bind xmlns='" + NS_BIND + "'>"
+                    + "<jid>" + mUserJID + "</jid></bind>");
+        } else if (ns.equals(NS_ROSTER) && type.equals("get")) {
+            StringBuilder items = new StringBuilder();
+            for (Map.Entry<String, String> item : mRoster.entrySet()) {
+                items.append("<item jid='").append(item.getKey())
+                        .append("' name='").append(StringEscapeUtils.escapeXml(item.getValue()))
+                        .append("' subscription='both'/>");
+            }
+            mRosterSent = System.nanoTime();
+            this.writeResult(iq, "<query xmlns='" + NS_ROSTER + "'>" + items + "</query>");
+        } else if (ns.equals(NS_ROSTER)) {
+            this.writeResult(iq, "");
+        } else if (ns.equals(NS_DISCO_INFO) && toServer) {
+            this.writeResult(iq, "<query xmlns='" + NS_DISCO_INFO + "'>"
+                    + "<identity category='server' type='im' name='load test'/>"
+                    + "<feature var='" + NS_ADDRESS + "'/></query>");
+        } else if (ns.equals(NS_DISCO_ITEMS) && toServer) {
+            this.writeResult(iq, "<query xmlns='" + NS_DISCO_ITEMS + "'/>");
+        } else {
+            this.write("<iq type='error' id='" + iq.attr("id") + "'" + fromAttr(iq) + ">"
+                    + "<error type='cancel'><service-unavailable"
+                    + " xmlns='urn:ietf:params:xml:ns:xmpp-stanzas'/></error></iq>");
+        }
+    }
+
+    private void writeResult(Element iq, String payload) throws IOException {
+        this.write("<iq type='result' id='" + iq.attr("id") + "'" + fromAttr(iq) + ">"
+                + payload + "</iq>");
+    }
+
+    private void writeAck() throws IOException {
+        if (mSMEnabled)
+            this.write("<a xmlns='" + NS_SM + "' h='" + mHandled + "'/>");
+    }
+
+    private void write(String xml) throws IOException {
+        synchronized (mWriteLock) {
+            Writer writer = mWriter;
+            if (writer == null)
+                throw new IOException("no client connected");
+
+            writer.write(xml);
+            writer.flush();
+        }
+    }
+
+    /** Replies must come from the addressed entity. */
+    private static String fromAttr(Element iq) {
+        String to = iq.attr("to");
+        return to.isEmpty() ? "" : " from='" + to + "'";
+    }
+
+    /** Parsed element, just enough to answer requests. */
+    private static final class Element {
+        final String name;
+        final String namespace;
+        final Map<String, String> attributes = new HashMap<>();
+        final List<Element> children = new ArrayList<>();
+
+        private Element(String name, String namespace) {
+            this.name = name;
+            this.namespace = namespace;
+        }
+
+        String attr(String attrName) {
+            String value = attributes.get(attrName);
+            return value == null ? "" : value;
+        }
+
+        /** Read the element at the current start tag, including children. */
+        static Element read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            Element element = new Element(parser.getName(), parser.getNamespace());
+            for (int i = 0; i < parser.getAttributeCount(); i++)
+                element.attributes.put(parser.getAttributeName(i), parser.getAttributeValue(i));
+
+            while (true) {
+                int event = parser.next();
+                if (event == XmlPullParser.START_TAG)
+                    element.children.add(read(parser));
+                else if (event == XmlPullParser.END_TAG)
+                    return element;
+                else if (event == XmlPullParser.END_DOCUMENT)
+                    throw new EOFException("stream ended in element: " + element.name);
+            }
+        }
+    }
+}
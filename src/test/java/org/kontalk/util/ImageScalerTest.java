@@ -0,0 +1,77 @@
+/*
+ *  Kontalk Java client
+ *  Copyright (C) 2016 Kontalk Devteam <devteam@kontalk.org>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.kontalk.util;
+
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ImageScalerTest {
+
+    /**
+     * Test of scale method, of class ImageScaler.
+     */
+    @Test
+    public void testScale() {
+        BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        assertSize(100, 50, ImageScaler.scale(image, 100, 100));
+        // not scaled up
+        assertSame(image, ImageScaler.scale(image, 400, 400));
+    }
+
+    /**
+     * Test of scaleMax method, of class ImageScaler.
+     */
+    @Test
+    public void testScaleMax() {
+        BufferedImage image = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        assertSize(200, 100, ImageScaler.scaleMax(image, 100, 100));
+        assertSame(image, ImageScaler.scaleMax(image, 100, 200));
+    }
+
+    /**
+     * Test of resize method, of class ImageScaler.
+     */
+    @Test
+    public void testResize() {
+        BufferedImage opaque = new BufferedImage(1000, 10, BufferedImage.TYPE_INT_RGB);
+        BufferedImage result = ImageScaler.resize(opaque, 30, 20);
+        assertSize(30, 20, result);
+        assertEquals(BufferedImage.TYPE_INT_RGB, result.getType());
+
+        BufferedImage transparent = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        result = ImageScaler.resize(transparent, 7, 7);
+        assertSize(7, 7, result);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, result.getType());
+    }
+
+    /**
+     * Test of scaleAsync method, of class ImageScaler.
+     */
+    @Test
+    public void testScaleAsync() throws Exception {
+        BufferedImage image = new BufferedImage(300, 600, BufferedImage.TYPE_INT_RGB);
+        assertSize(50, 100, ImageScaler.scaleAsync(image, 100, 100).get());
+    }
+
+    private static void assertSize(int width, int height, BufferedImage image) {
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+}